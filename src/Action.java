@@ -22,4 +22,5 @@ public abstract class Action {
 
     //implemented in the ActivityAction and AnimationAction classes
     public abstract void executeAction(EventScheduler scheduler);
+    public abstract ActionKind getKind();
 }
@@ -20,4 +20,9 @@ public class ActivityAction extends Action{
     public void executeAction(EventScheduler scheduler) {
         ((ActivityEntity) this.entity).executeActivity(this.world, this.imageStore, scheduler);
     }
+
+    @Override
+    public ActionKind getKind() {
+        return ActionKind.ACTIVITY;
+    }
 }
@@ -29,10 +29,14 @@ public abstract class ActivityEntity extends AnimationEntity{
      */
     @Override
     public void scheduleActions(EventScheduler scheduler, WorldModel world, ImageStore imageStore) {
-        ActivityAction newAction = new ActivityAction(this, world, imageStore);
-        AnimationAction newAnimation = new AnimationAction(this, 0);
-        scheduler.scheduleEvent(this, newAction, this.actionPeriod);
-        scheduler.scheduleEvent(this, newAnimation, getAnimationPeriod());
+        scheduler.scheduleActivity(this, world, imageStore, this.actionPeriod);
+        scheduler.scheduleAnimation(this, 0, getAnimationPeriod());
+    }
+
+    @Override
+    protected void copyTo(EntityStore store, int slot) {
+        super.copyTo(store, slot);
+        store.setActionPeriod(slot, this.actionPeriod);
     }
 
     /**
@@ -20,12 +20,16 @@ public class AnimationAction extends Action{
         ((AnimationEntity) this.entity).nextImage();
 
         if (this.repeatCount != 1) {
-            AnimationAction newAction = new AnimationAction(this.entity, Math.max(this.repeatCount - 1, 0));
-            scheduler.scheduleEvent(
-                    this.entity,
-                    newAction,
+            scheduler.scheduleAnimation(
+                    (AnimationEntity) this.entity,
+                    Math.max(this.repeatCount - 1, 0),
                     ((AnimationEntity) this.entity).getAnimationPeriod()
             );
         }
     }
+
+    @Override
+    public ActionKind getKind() {
+        return ActionKind.ANIMATION;
+    }
 }
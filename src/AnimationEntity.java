@@ -5,6 +5,12 @@ import java.util.List;
 public abstract class AnimationEntity extends Entity {
     protected double animationPeriod;
 
+    // Set only in closed-form animation mode: the clock frames are counted against, when
+    // the count started, and how many frames to stop after (0 for never).
+    private EventScheduler animationClock;
+    private double animationStart;
+    private int animationFrames;
+
     /**
      * Creates a new DudeNotFull.
      * @param id       The id of the new entity.
@@ -32,8 +38,7 @@ public abstract class AnimationEntity extends Entity {
      * @param imageStore Stores all the images.
      */
     public void scheduleActions(EventScheduler scheduler, WorldModel world, ImageStore imageStore) {
-        AnimationAction newAnimation = new AnimationAction(this, 0);
-        scheduler.scheduleEvent(this, newAnimation, getAnimationPeriod());
+        scheduler.scheduleAnimation(this, 0, getAnimationPeriod());
     }
 
     /**
@@ -41,6 +46,57 @@ public abstract class AnimationEntity extends Entity {
      * @returns imageIndex
      */
     public void nextImage() {
-        this.imageIndex = this.imageIndex + 1;
+        this.setBaseImageIndex(this.getBaseImageIndex() + 1);
+    }
+
+    /**
+     * Starts counting animation frames against the scheduler's clock instead of waiting for
+     * animation events. A new frame begins every animationPeriod from now.
+     * @param clock The scheduler whose current time drives the animation.
+     * @param repeatCount The number of frames to show, or 0 to animate forever.
+     */
+    public void startAnimationClock(EventScheduler clock, int repeatCount) {
+        this.setBaseImageIndex(this.getImageIndex());
+        if (this.getEntityStore() != null) {
+            this.getEntityStore().setAnimationClock(this.getStoreSlot(), clock, clock.getCurrentTime(), repeatCount);
+        } else {
+            this.animationClock = clock;
+            this.animationStart = clock.getCurrentTime();
+            this.animationFrames = repeatCount;
+        }
+    }
+
+    /**
+     * In closed-form animation mode, adds the frames elapsed on the animation clock.
+     * @returns imageIndex
+     */
+    @Override
+    public int getImageIndex() {
+        if (this.getEntityStore() != null) {
+            return this.getEntityStore().getImageIndex(this.getStoreSlot());
+        }
+        if (this.animationClock == null) {
+            return this.getBaseImageIndex();
+        }
+        int frames = (int) ((this.animationClock.getCurrentTime() - this.animationStart) / this.animationPeriod);
+        if (this.animationFrames > 0) {
+            frames = Math.min(frames, this.animationFrames);
+        }
+        return this.getBaseImageIndex() + frames;
+    }
+
+    @Override
+    protected void copyTo(EntityStore store, int slot) {
+        super.copyTo(store, slot);
+        store.setAnimationPeriod(slot, this.animationPeriod);
+        store.setAnimationClock(slot, this.animationClock, this.animationStart, this.animationFrames);
+    }
+
+    @Override
+    protected void copyFrom(EntityStore store, int slot) {
+        super.copyFrom(store, slot);
+        this.animationClock = store.getAnimationClock(slot);
+        this.animationStart = store.getAnimationStart(slot);
+        this.animationFrames = store.getAnimationFrames(slot);
     }
 }
@@ -0,0 +1,139 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import processing.core.PApplet;
+import processing.core.PGraphics;
+import processing.core.PImage;
+
+/**
+ * The world's backgrounds, drawn ahead of time into offscreen images of square chunks of
+ * cells. Backgrounds only change through setBackgroundCell, so a view can draw the
+ * background of its whole viewport with one image call per visible chunk instead of one
+ * per cell.
+ *
+ * A chunk's image is drawn the first time it is needed and kept until one of its cells
+ * changes. Only the most recently used chunks are kept, so scrolling around a large world
+ * does not pile up images.
+ */
+public final class BackgroundLayer {
+    public static final int DEFAULT_CHUNK_SIZE = 8;
+    public static final int DEFAULT_MAX_CHUNKS = 64;
+
+    private final PApplet screen;
+    private final WorldModel world;
+    private final int tileWidth;
+    private final int tileHeight;
+    private final int chunkSize;
+    private final Map<Long, PGraphics> chunks;
+    private TextureAtlas atlas;
+    private long renderedCount;
+
+    public BackgroundLayer(PApplet screen, WorldModel world, int tileWidth, int tileHeight) {
+        this(screen, world, tileWidth, tileHeight, DEFAULT_CHUNK_SIZE, DEFAULT_MAX_CHUNKS);
+    }
+
+    /**
+     * Creates a new BackgroundLayer.
+     * @param screen The sketch that makes the offscreen images.
+     * @param world The game world.
+     * @param tileWidth The width (pixels) of a cell.
+     * @param tileHeight The height (pixels) of a cell.
+     * @param chunkSize The width and height (cells) of each chunk.
+     * @param maxChunks The number of chunk images to keep.
+     */
+    public BackgroundLayer(PApplet screen, WorldModel world, int tileWidth, int tileHeight, int chunkSize, int maxChunks) {
+        if (chunkSize <= 0 || maxChunks <= 0) {
+            throw new IllegalArgumentException("BackgroundLayer requires a positive chunk size and chunk count");
+        }
+        this.screen = screen;
+        this.world = world;
+        this.tileWidth = tileWidth;
+        this.tileHeight = tileHeight;
+        this.chunkSize = chunkSize;
+        this.chunks = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, PGraphics> eldest) {
+                return this.size() > maxChunks;
+            }
+        };
+    }
+
+    /**
+     * Makes the layer draw frames from their pages in an atlas. Chunks already drawn are kept.
+     * @param atlas The atlas holding the frames, or null to draw each frame's own image.
+     */
+    public void setAtlas(TextureAtlas atlas) {
+        this.atlas = atlas;
+    }
+
+    /**
+     * @return The number of chunk images drawn so far.
+     */
+    public long getRenderedCount() {
+        return this.renderedCount;
+    }
+
+    /**
+     * Draws the backgrounds of every cell in the viewport.
+     * @param target Where to draw, with the viewport's top left cell at (0, 0).
+     * @param viewport The part of the world to draw.
+     */
+    public void draw(PGraphics target, Viewport viewport) {
+        int firstX = Math.floorDiv(viewport.getCol(), this.chunkSize);
+        int firstY = Math.floorDiv(viewport.getRow(), this.chunkSize);
+        int lastX = Math.floorDiv(viewport.getCol() + viewport.getNumCols() - 1, this.chunkSize);
+        int lastY = Math.floorDiv(viewport.getRow() + viewport.getNumRows() - 1, this.chunkSize);
+
+        for (int chunkY = firstY; chunkY <= lastY; chunkY++) {
+            for (int chunkX = firstX; chunkX <= lastX; chunkX++) {
+                target.image(this.getChunk(chunkX, chunkY),
+                        (chunkX * this.chunkSize - viewport.getCol()) * this.tileWidth,
+                        (chunkY * this.chunkSize - viewport.getRow()) * this.tileHeight);
+            }
+        }
+    }
+
+    /**
+     * Throws away the image of the chunk holding (x, y), after its background has changed.
+     */
+    public void invalidate(int x, int y) {
+        this.chunks.remove(Point.pack(Math.floorDiv(x, this.chunkSize), Math.floorDiv(y, this.chunkSize)));
+    }
+
+    public void invalidateAll() {
+        this.chunks.clear();
+    }
+
+    private PGraphics getChunk(int chunkX, int chunkY) {
+        long key = Point.pack(chunkX, chunkY);
+        PGraphics chunk = this.chunks.get(key);
+        if (chunk == null) {
+            chunk = this.render(chunkX, chunkY);
+            this.chunks.put(key, chunk);
+        }
+        return chunk;
+    }
+
+    private PGraphics render(int chunkX, int chunkY) {
+        PGraphics chunk = this.screen.createGraphics(this.chunkSize * this.tileWidth, this.chunkSize * this.tileHeight);
+        chunk.beginDraw();
+        for (int row = 0; row < this.chunkSize; row++) {
+            for (int col = 0; col < this.chunkSize; col++) {
+                int x = chunkX * this.chunkSize + col;
+                int y = chunkY * this.chunkSize + row;
+                if (!this.world.withinBounds(x, y)) {
+                    continue;
+                }
+                PImage image = this.world.getBackgroundCell(x, y).getCurrentImage();
+                if (this.atlas == null) {
+                    chunk.image(image, col * this.tileWidth, row * this.tileHeight);
+                } else {
+                    this.atlas.draw(chunk, image, col * this.tileWidth, row * this.tileHeight);
+                }
+            }
+        }
+        chunk.endDraw();
+        this.renderedCount++;
+        return chunk;
+    }
+}
@@ -0,0 +1,314 @@
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * A WorldGrid made of square chunks, for worlds far bigger than the heap.
+ *
+ * A chunk is only made when one of its cells is first touched. If it has never been made
+ * before, its backgrounds come from a Generator, which must give the same Background for a
+ * cell every time it is asked. Once more than maxResident chunks are in memory, the least
+ * recently used chunks with no occupants are evicted. A chunk whose backgrounds were changed
+ * after it was generated is written to the eviction directory and read back the next time
+ * it is touched; an unchanged chunk is just generated again.
+ *
+ * Chunks with occupants are never evicted, since every entity in the world is being
+ * simulated. The files in the eviction directory refer to this grid's palette, so they are
+ * only meaningful to the grid that wrote them.
+ */
+public final class ChunkedWorldGrid extends WorldGrid {
+    public static final int DEFAULT_CHUNK_SIZE = 64;
+    public static final int DEFAULT_MAX_RESIDENT = 256;
+
+    /**
+     * Decides the background of a cell that has never been set.
+     */
+    public interface Generator {
+        Background backgroundAt(int x, int y);
+    }
+
+    private final int rows;
+    private final int cols;
+    private final int chunkSize;
+    private final int maxResident;
+    private final Generator generator;
+    private final Path evictionDirectory;
+    private final LinkedHashMap<Long, Chunk> resident;
+    private final Set<Long> evicted;
+
+    // the chunk touched last, since cell loops tend to stay in one chunk
+    private long lastKey;
+    private Chunk lastChunk;
+
+    /**
+     * Creates a new ChunkedWorldGrid with no occupants.
+     * @param rows The number of rows, which may be far more than fit in memory.
+     * @param cols The number of columns, which may be far more than fit in memory.
+     * @param chunkSize The width and height (cells) of each chunk.
+     * @param maxResident The number of chunks to keep in memory before evicting any.
+     * @param generator Decides the backgrounds of cells that have never been set.
+     * @param evictionDirectory Where changed chunks are written when evicted, or null to keep
+     *                          changed chunks in memory.
+     */
+    public ChunkedWorldGrid(int rows, int cols, int chunkSize, int maxResident, Generator generator, Path evictionDirectory) {
+        if (chunkSize <= 0 || maxResident <= 0) {
+            throw new IllegalArgumentException("ChunkedWorldGrid requires a positive chunk size and resident limit");
+        }
+        this.rows = rows;
+        this.cols = cols;
+        this.chunkSize = chunkSize;
+        this.maxResident = maxResident;
+        this.generator = generator;
+        this.evictionDirectory = evictionDirectory;
+        this.resident = new LinkedHashMap<>(16, 0.75f, true);
+        this.evicted = new HashSet<>();
+        this.lastChunk = null;
+    }
+
+    /**
+     * @return A Generator that scatters the given backgrounds over the world, chosen by a
+     * hash of the seed and the cell so that it does not matter which order cells are made in.
+     */
+    public static Generator scatter(long seed, List<Background> backgrounds) {
+        if (backgrounds.isEmpty()) {
+            throw new IllegalArgumentException("scatter requires at least one background");
+        }
+        return (x, y) -> {
+            long hash = seed ^ Point.pack(x, y) * 0x9e3779b97f4a7c15L;
+            hash = (hash ^ (hash >>> 31)) * 0xbf58476d1ce4e5b9L;
+            hash ^= hash >>> 29;
+            return backgrounds.get((int) Long.remainderUnsigned(hash, backgrounds.size()));
+        };
+    }
+
+    /**
+     * @return The number of chunks in memory.
+     */
+    public int getResidentCount() {
+        return this.resident.size();
+    }
+
+    /**
+     * @return The number of changed chunks that are on disk rather than in memory.
+     */
+    public int getEvictedCount() {
+        return this.evicted.size();
+    }
+
+    @Override
+    public int getRows() {
+        return this.rows;
+    }
+
+    @Override
+    public int getCols() {
+        return this.cols;
+    }
+
+    @Override
+    public boolean withinBounds(int x, int y) {
+        return y >= 0 && y < this.rows && x >= 0 && x < this.cols;
+    }
+
+    @Override
+    public Point pointAt(int x, int y) {
+        Chunk chunk = this.chunkAt(x, y);
+        int cell = this.cellIndex(x, y);
+        if (chunk.points == null) {
+            chunk.points = new Point[this.chunkSize * this.chunkSize];
+        }
+        Point point = chunk.points[cell];
+        if (point == null) {
+            point = new Point(x, y);
+            chunk.points[cell] = point;
+        }
+        return point;
+    }
+
+    @Override
+    public int getBackgroundIndex(int x, int y) {
+        return this.chunkAt(x, y).backgrounds[this.cellIndex(x, y)] & 0xffff;
+    }
+
+    @Override
+    protected void setBackgroundIndex(int x, int y, int index) {
+        Chunk chunk = this.chunkAt(x, y);
+        chunk.backgrounds[this.cellIndex(x, y)] = (short) index;
+        chunk.changed = true;
+    }
+
+    /**
+     * Not supported: a chunked world's backgrounds come from its Generator.
+     */
+    @Override
+    public void fillBackground(Background background) {
+        throw new UnsupportedOperationException("ChunkedWorldGrid backgrounds come from its Generator");
+    }
+
+    /**
+     * Puts every cell back to its generated background.
+     */
+    @Override
+    public void clearBackgrounds() {
+        for (Map.Entry<Long, Chunk> entry : this.resident.entrySet()) {
+            this.generate(entry.getKey(), entry.getValue());
+        }
+        for (long key : this.evicted) {
+            this.deleteChunkFile(key);
+        }
+        this.evicted.clear();
+    }
+
+    @Override
+    public int getOccupantHandle(int x, int y) {
+        return this.chunkAt(x, y).occupancy[this.cellIndex(x, y)];
+    }
+
+    @Override
+    protected void setOccupantHandle(int x, int y, int handle) {
+        Chunk chunk = this.chunkAt(x, y);
+        int cell = this.cellIndex(x, y);
+        int old = chunk.occupancy[cell];
+        chunk.occupancy[cell] = handle;
+        chunk.occupantCount += (handle != EMPTY ? 1 : 0) - (old != EMPTY ? 1 : 0);
+    }
+
+    @Override
+    public void clearOccupants() {
+        super.clearOccupants();
+        for (Chunk chunk : this.resident.values()) {
+            Arrays.fill(chunk.occupancy, EMPTY);
+            chunk.occupantCount = 0;
+        }
+    }
+
+    /**
+     * Evicts every chunk that has no occupants.
+     */
+    public void evictIdle() {
+        this.evict(0, null);
+    }
+
+    // the index of cell (x, y) within its chunk
+    private int cellIndex(int x, int y) {
+        return Math.floorMod(y, this.chunkSize) * this.chunkSize + Math.floorMod(x, this.chunkSize);
+    }
+
+    private Chunk chunkAt(int x, int y) {
+        long key = Point.pack(Math.floorDiv(x, this.chunkSize), Math.floorDiv(y, this.chunkSize));
+        if (this.lastChunk != null && key == this.lastKey) {
+            return this.lastChunk;
+        }
+
+        Chunk chunk = this.resident.get(key);
+        if (chunk == null) {
+            chunk = new Chunk(this.chunkSize);
+            if (this.evicted.remove(key)) {
+                this.readChunk(key, chunk);
+            } else {
+                this.generate(key, chunk);
+            }
+            this.resident.put(key, chunk);
+            this.evict(this.maxResident, chunk);
+        }
+        this.lastKey = key;
+        this.lastChunk = chunk;
+        return chunk;
+    }
+
+    /**
+     * Evicts least recently used chunks without occupants until at most limit are resident.
+     * The chunk keep, if there is one, is never evicted.
+     */
+    private void evict(int limit, Chunk keep) {
+        // hits on lastChunk skip the map, so bring its place in the access order up to date
+        if (this.lastChunk != null) {
+            this.resident.get(this.lastKey);
+        }
+        Iterator<Map.Entry<Long, Chunk>> entries = this.resident.entrySet().iterator();
+        while (this.resident.size() > limit && entries.hasNext()) {
+            Map.Entry<Long, Chunk> entry = entries.next();
+            Chunk chunk = entry.getValue();
+            long key = entry.getKey();
+            if (chunk == keep || chunk.occupantCount > 0 || (chunk.changed && this.evictionDirectory == null)) {
+                continue;
+            }
+            if (chunk.changed) {
+                this.writeChunk(key, chunk);
+                this.evicted.add(key);
+            }
+            entries.remove();
+            if (chunk == this.lastChunk) {
+                this.lastChunk = null;
+            }
+        }
+    }
+
+    private void generate(long key, Chunk chunk) {
+        int originX = Point.unpackX(key) * this.chunkSize;
+        int originY = Point.unpackY(key) * this.chunkSize;
+        Background last = null;
+        int lastIndex = NO_BACKGROUND;
+
+        for (int dy = 0; dy < this.chunkSize; dy++) {
+            for (int dx = 0; dx < this.chunkSize; dx++) {
+                Background background = this.generator.backgroundAt(originX + dx, originY + dy);
+                if (background != last) {
+                    last = background;
+                    lastIndex = this.paletteIndexOf(background);
+                }
+                chunk.backgrounds[dy * this.chunkSize + dx] = (short) lastIndex;
+            }
+        }
+        chunk.changed = false;
+    }
+
+    private Path chunkFile(long key) {
+        return this.evictionDirectory.resolve("chunk_" + Point.unpackX(key) + "_" + Point.unpackY(key));
+    }
+
+    private void writeChunk(long key, Chunk chunk) {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(this.chunkFile(key))))) {
+            for (short background : chunk.backgrounds) {
+                out.writeShort(background);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void readChunk(long key, Chunk chunk) {
+        Path file = this.chunkFile(key);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            for (int i = 0; i < chunk.backgrounds.length; i++) {
+                chunk.backgrounds[i] = in.readShort();
+            }
+            Files.delete(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        chunk.changed = true;
+    }
+
+    private void deleteChunkFile(long key) {
+        try {
+            Files.deleteIfExists(this.chunkFile(key));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static final class Chunk {
+        private final short[] backgrounds;
+        private final int[] occupancy;
+        private Point[] points;
+        private int occupantCount;
+        private boolean changed;
+
+        private Chunk(int chunkSize) {
+            this.backgrounds = new short[chunkSize * chunkSize];
+            this.occupancy = new int[chunkSize * chunkSize];
+        }
+    }
+}
@@ -0,0 +1,115 @@
+import java.util.Arrays;
+
+/**
+ * The cells of a world whose background or occupant has changed since a view last drew
+ * them. A WorldModel marks cells here as they change, and a WorldView drains them once a
+ * frame and redraws only those cells.
+ *
+ * Cells whose background changed are also listed on their own, since far fewer things
+ * cache backgrounds than occupants.
+ *
+ * Cells are kept as packed points in the order they were marked, and a cell may be marked
+ * more than once. If more than the capacity pile up between drains, say because no frame
+ * has been drawn for a while, the list is dropped and the whole view is redrawn instead.
+ */
+public final class DirtyCells {
+    public static final int DEFAULT_CAPACITY = 4096;
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final int capacity;
+    private long[] cells;
+    private int size;
+    private long[] backgroundCells;
+    private int backgroundSize;
+    private boolean overflowed;
+
+    public DirtyCells() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a new DirtyCells.
+     * @param capacity The number of marks to keep before giving up and redrawing everything.
+     */
+    public DirtyCells(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("DirtyCells requires a positive capacity");
+        }
+        this.capacity = capacity;
+        this.cells = new long[Math.min(INITIAL_CAPACITY, capacity)];
+        this.backgroundCells = new long[Math.min(INITIAL_CAPACITY, capacity)];
+    }
+
+    public void mark(int x, int y) {
+        if (this.overflowed) {
+            return;
+        }
+        if (this.size == this.capacity) {
+            this.overflow();
+            return;
+        }
+        if (this.size == this.cells.length) {
+            this.cells = Arrays.copyOf(this.cells, Math.min(this.cells.length * 2, this.capacity));
+        }
+        this.cells[this.size++] = Point.pack(x, y);
+    }
+
+    /**
+     * Marks a cell whose background has changed.
+     */
+    public void markBackground(int x, int y) {
+        this.mark(x, y);
+        if (this.overflowed) {
+            return;
+        }
+        if (this.backgroundSize == this.capacity) {
+            this.overflow();
+            return;
+        }
+        if (this.backgroundSize == this.backgroundCells.length) {
+            this.backgroundCells = Arrays.copyOf(this.backgroundCells, Math.min(this.backgroundCells.length * 2, this.capacity));
+        }
+        this.backgroundCells[this.backgroundSize++] = Point.pack(x, y);
+    }
+
+    private void overflow() {
+        this.overflowed = true;
+        this.size = 0;
+        this.backgroundSize = 0;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * @return The packed point of the index-th cell marked since the last clear.
+     */
+    public long get(int index) {
+        return this.cells[index];
+    }
+
+    public int backgroundSize() {
+        return this.backgroundSize;
+    }
+
+    /**
+     * @return The packed point of the index-th cell whose background changed since the last clear.
+     */
+    public long getBackground(int index) {
+        return this.backgroundCells[index];
+    }
+
+    /**
+     * @return Whether too many cells were marked to keep track of, so everything must be redrawn.
+     */
+    public boolean isOverflowed() {
+        return this.overflowed;
+    }
+
+    public void clear() {
+        this.size = 0;
+        this.backgroundSize = 0;
+        this.overflowed = false;
+    }
+}
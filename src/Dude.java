@@ -3,7 +3,7 @@ import processing.core.PImage;
 import java.util.List;
 
 public abstract class Dude extends MotionEntity{
-    protected int resourceCount;
+    private int resourceCount;
 
     /**
      * Creates a new DudeNotFull.
@@ -24,28 +24,68 @@ public abstract class Dude extends MotionEntity{
      * @returns resourceCount
      */
     public int getResourceCount() {
-        return resourceCount;
+        return this.getEntityStore() == null ? this.resourceCount : this.getEntityStore().getResourceCount(this.getStoreSlot());
+    }
+
+    public void setResourceCount(int resourceCount) {
+        if (this.getEntityStore() == null) {
+            this.resourceCount = resourceCount;
+        } else {
+            this.getEntityStore().setResourceCount(this.getStoreSlot(), resourceCount);
+        }
+    }
+
+    @Override
+    protected void copyTo(EntityStore store, int slot) {
+        super.copyTo(store, slot);
+        store.setResourceCount(slot, this.resourceCount);
+    }
+
+    @Override
+    protected void copyFrom(EntityStore store, int slot) {
+        super.copyFrom(store, slot);
+        this.resourceCount = store.getResourceCount(slot);
     }
 
     /**
      * updates the Dude's position depending on the target
      * @param world      The game world.
-     * @param destPos     The location of the entity the Fairy should move toward.
+     * @param destX      The column of the entity the Dude should move toward.
+     * @param destY      The row of the entity the Dude should move toward.
+     * @return The packed coordinate of the Dude's next position.
      */
     @Override
-    public Point nextPosition(WorldModel world, Point destPos) {
-        int horiz = Integer.signum(destPos.x - this.position.x);
-        Point newPos = new Point(this.position.x + horiz, this.position.y);
+    public long nextPackedPosition(WorldModel world, int destX, int destY) {
+        Point position = this.getPosition();
+        int horiz = Integer.signum(destX - position.x);
+        int newX = position.x + horiz;
+        int newY = position.y;
 
-        if (horiz == 0 || world.isOccupied(newPos) && !(world.getOccupancyCell(newPos) instanceof Stump)) {
-            int vert = Integer.signum(destPos.y - this.position.y);
-            newPos = new Point(this.position.x, this.position.y + vert);
+        if (horiz == 0 || isBlocked(world, newX, newY)) {
+            int vert = Integer.signum(destY - position.y);
+            newX = position.x;
+            newY = position.y + vert;
 
-            if (vert == 0 || world.isOccupied(newPos) && !(world.getOccupancyCell(newPos) instanceof Stump)) {
-                newPos = this.position;
+            if (vert == 0 || isBlocked(world, newX, newY)) {
+                return position.pack();
             }
         }
 
-        return newPos;
+        return Point.pack(newX, newY);
+    }
+
+    @Override
+    public int getPassableKinds() {
+        return EntityKind.STUMP.mask();
+    }
+
+    @Override
+    public boolean canEnter(WorldModel world, int x, int y) {
+        return world.withinBounds(x, y) && !isBlocked(world, x, y);
+    }
+
+    // Dudes can walk onto stumps, which they trample
+    private static boolean isBlocked(WorldModel world, int x, int y) {
+        return world.isOccupied(x, y) && world.getOccupancyCell(x, y).getKind() != EntityKind.STUMP;
     }
 }
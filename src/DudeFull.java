@@ -1,6 +1,5 @@
 import processing.core.PImage;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 
@@ -21,6 +20,16 @@ public class DudeFull extends Dude {
         this.resourceLimit = resourceLimit;
     }
 
+    @Override
+    public EntityKind getKind() {
+        return EntityKind.DUDE_FULL;
+    }
+
+    @Override
+    public int getTargetKinds() {
+        return EntityKind.HOUSE.mask();
+    }
+
     /**
      * Adds an activity to the scheduler.
      * @param world      The game world.
@@ -29,13 +38,12 @@ public class DudeFull extends Dude {
      */
     @Override
     public void executeActivity(WorldModel world, ImageStore imageStore, EventScheduler scheduler) {
-        Optional<Entity> fullTarget = world.findNearest(this.position, new ArrayList<>(List.of(House.class)));
+        Optional<Entity> fullTarget = world.findNearest(this.getPosition(), this.getTargetKinds());
 
         if (fullTarget.isPresent() && this.moveTo(world, fullTarget.get(), scheduler)) {
             this.transform(world, scheduler, imageStore);
         } else {
-            ActivityAction newAction = new ActivityAction(this, world, imageStore);
-            scheduler.scheduleEvent(this, newAction, this.actionPeriod);
+            scheduler.scheduleActivity(this, world, imageStore, this.actionPeriod);
         }
     }
 
@@ -46,7 +54,7 @@ public class DudeFull extends Dude {
      * @param scheduler  Stores all the scheduled events.
      */
     public void transform(WorldModel world, EventScheduler scheduler, ImageStore imageStore) {
-        DudeNotFull dude = new DudeNotFull(this.id, this.position, this.actionPeriod, this.animationPeriod, this.resourceLimit, this.images);
+        DudeNotFull dude = new DudeNotFull(this.id, this.getPosition(), this.actionPeriod, this.animationPeriod, this.resourceLimit, this.images);
 
         world.removeEntity(scheduler, this);
 
@@ -61,12 +69,12 @@ public class DudeFull extends Dude {
      * @param scheduler  Stores all the scheduled events.
      */
     public boolean moveTo(WorldModel world, Entity target, EventScheduler scheduler) {
-        if (this.position.adjacent(target.position)) {
+        if (this.getPosition().adjacent(target.getPosition())) {
             return true;
         } else {
-            Point nextPos = this.nextPosition(world, target.position);
+            Point nextPos = this.nextPosition(world, target.getPosition());
 
-            if (!this.position.equals(nextPos)) {
+            if (!this.getPosition().equals(nextPos)) {
                 world.moveEntity(scheduler, this, nextPos);
             }
             return false;
@@ -1,7 +1,5 @@
 import processing.core.PImage;
 
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 
@@ -22,6 +20,16 @@ public class DudeNotFull extends Dude{
         this.resourceLimit = resourceLimit;
     }
 
+    @Override
+    public EntityKind getKind() {
+        return EntityKind.DUDE_NOT_FULL;
+    }
+
+    @Override
+    public int getTargetKinds() {
+        return EntityKind.PLANTS;
+    }
+
     /**
      * Adds an activity to the scheduler.
      * @param world      The game world.
@@ -30,11 +38,10 @@ public class DudeNotFull extends Dude{
      */
     @Override
     public void executeActivity(WorldModel world, ImageStore imageStore, EventScheduler scheduler) {
-        Optional<Entity> target = world.findNearest(this.position, new ArrayList<>(Arrays.asList(Tree.class, Sapling.class)));
+        Optional<Entity> target = world.findNearest(this.getPosition(), this.getTargetKinds());
 
         if (target.isEmpty() || !this.moveTo(world, target.get(), scheduler) || !this.transform(world, scheduler, imageStore)) {
-            ActivityAction newAction = new ActivityAction(this, world, imageStore);
-            scheduler.scheduleEvent(this, newAction, this.actionPeriod);
+            scheduler.scheduleActivity(this, world, imageStore, this.actionPeriod);
         }
     }
 
@@ -45,8 +52,8 @@ public class DudeNotFull extends Dude{
      * @param scheduler  Stores all the scheduled events.
      */
     public boolean transform(WorldModel world, EventScheduler scheduler, ImageStore imageStore) {
-        if (this.resourceCount >= this.resourceLimit) {
-            DudeFull dude = new DudeFull(this.id, this.position, this.actionPeriod, this.animationPeriod, this.resourceCount, this.resourceLimit, this.images);
+        if (this.getResourceCount() >= this.resourceLimit) {
+            DudeFull dude = new DudeFull(this.id, this.getPosition(), this.actionPeriod, this.animationPeriod, this.getResourceCount(), this.resourceLimit, this.images);
 
             world.removeEntity(scheduler, this);
             scheduler.unscheduleAllEvents(this);
@@ -68,15 +75,15 @@ public class DudeNotFull extends Dude{
      */
     @Override
     public boolean moveTo(WorldModel world, Entity target, EventScheduler scheduler) {
-        if (this.position.adjacent(target.position)) {
-            this.resourceCount += 1;
+        if (this.getPosition().adjacent(target.getPosition())) {
+            this.setResourceCount(this.getResourceCount() + 1);
             target = (PlantEntity) target;
             ((PlantEntity) target).setHealth(((PlantEntity) target).getHealth() - 1);
             return true;
         } else {
-            Point nextPos = this.nextPosition(world, target.position);
+            Point nextPos = this.nextPosition(world, target.getPosition());
 
-            if (!this.position.equals(nextPos)) {
+            if (!this.getPosition().equals(nextPos)) {
                 world.moveEntity(scheduler, this, nextPos);
             }
             return false;
@@ -50,9 +50,30 @@ public abstract class Entity {
 
     // Instance variables
     protected final String id;
-    protected Point position;
+    private Point position;
     protected final List<PImage> images;
-    protected int imageIndex = 0;
+    private int imageIndex = 0;
+
+    // The EntityStore this entity is a view of, and its slot there; while it has one, the
+    // store holds this entity's changing state instead of its fields.
+    private EntityStore store;
+    private int storeSlot = -1;
+
+    // Head of the list of events an EventQueueScheduler still has pending for this entity,
+    // and the handle a PrimitiveEventScheduler knows this entity by (-1 if it has none).
+    private Event pendingEvents;
+    private int eventHandle = -1;
+
+    // When this entity was added to its world, relative to the world's other entities,
+    // and where it sits among the world's entities of the same kind (-1 if it is not in one).
+    private long worldOrder = -1;
+    private int kindSlot = -1;
+
+    // Where this entity sits in its world's EntityList (-1 if it is not in one).
+    private int listSlot = -1;
+
+    // The handle its world's WorldGrid knows this entity by (0 if it is not on a grid).
+    private int gridHandle = 0;
 
     /**
      * Creates a new Entity.
@@ -73,10 +94,10 @@ public abstract class Entity {
             return Optional.empty();
         } else {
             Entity nearest = entities.getFirst();
-            int nearestDistance = nearest.position.distanceSquared(pos);
+            int nearestDistance = nearest.getPosition().distanceSquared(pos);
 
             for (Entity other : entities) {
-                int otherDistance = other.position.distanceSquared(pos);
+                int otherDistance = other.getPosition().distanceSquared(pos);
 
                 if (otherDistance < nearestDistance) {
                     nearest = other;
@@ -93,23 +114,176 @@ public abstract class Entity {
     }
 
     public Point getPosition() {
-        return position;
+        return this.store == null ? this.position : this.store.getPosition(this.storeSlot);
     }
 
     public void setPosition(Point position) {
-        this.position = position;
+        if (this.store == null) {
+            this.position = position;
+        } else {
+            this.store.setPosition(this.storeSlot, position);
+        }
+    }
+
+    public EntityStore getEntityStore() {
+        return store;
+    }
+
+    public int getStoreSlot() {
+        return storeSlot;
+    }
+
+    /**
+     * Called by an EntityStore when this entity moves in or out of one of its slots.
+     */
+    public void setEntityStore(EntityStore store, int storeSlot) {
+        this.store = store;
+        this.storeSlot = storeSlot;
+    }
+
+    /**
+     * Writes this entity's state into a store slot. Subclasses add their own state.
+     */
+    protected void copyTo(EntityStore store, int slot) {
+        store.setPosition(slot, this.position);
+        store.setBaseImageIndex(slot, this.imageIndex);
+    }
+
+    /**
+     * Reads this entity's changing state back out of a store slot when it leaves the store.
+     * Subclasses add their own state.
+     */
+    protected void copyFrom(EntityStore store, int slot) {
+        this.position = store.getPosition(slot);
+        this.imageIndex = store.getBaseImageIndex(slot);
+    }
+
+    public Event getPendingEvents() {
+        return pendingEvents;
+    }
+
+    public void setPendingEvents(Event pendingEvents) {
+        this.pendingEvents = pendingEvents;
+    }
+
+    /**
+     * Pushes an event onto the front of this entity's list of pending events.
+     * @param event An event for this entity that is not in the list yet.
+     */
+    public void addPendingEvent(Event event) {
+        Event head = this.pendingEvents;
+        event.setPreviousPending(null);
+        event.setNextPending(head);
+        if (head != null) {
+            head.setPreviousPending(event);
+        }
+        this.pendingEvents = event;
+    }
+
+    /**
+     * Unlinks an event from this entity's list of pending events.
+     * @param event An event for this entity.
+     */
+    public void removePendingEvent(Event event) {
+        Event previous = event.getPreviousPending();
+        Event next = event.getNextPending();
+
+        if (previous != null) {
+            previous.setNextPending(next);
+        } else if (this.pendingEvents == event) {
+            this.pendingEvents = next;
+        }
+        if (next != null) {
+            next.setPreviousPending(previous);
+        }
+        event.setPreviousPending(null);
+        event.setNextPending(null);
+    }
+
+    public int getEventHandle() {
+        return eventHandle;
+    }
+
+    public void setEventHandle(int eventHandle) {
+        this.eventHandle = eventHandle;
+    }
+
+    public long getWorldOrder() {
+        return worldOrder;
+    }
+
+    public void setWorldOrder(long worldOrder) {
+        this.worldOrder = worldOrder;
+    }
+
+    public int getListSlot() {
+        return listSlot;
+    }
+
+    public void setListSlot(int listSlot) {
+        this.listSlot = listSlot;
+    }
+
+    public int getKindSlot() {
+        return kindSlot;
+    }
+
+    public void setKindSlot(int kindSlot) {
+        this.kindSlot = kindSlot;
+    }
+
+    public int getGridHandle() {
+        return gridHandle;
+    }
+
+    public void setGridHandle(int gridHandle) {
+        this.gridHandle = gridHandle;
+    }
+
+    /**
+     * @return Which kind of entity this is.
+     */
+    public abstract EntityKind getKind();
+
+    /**
+     * imageIndex getter
+     * @returns imageIndex
+     */
+    public int getImageIndex() {
+        return this.getBaseImageIndex();
+    }
+
+    /**
+     * @return The image index without any frames counted by an animation clock.
+     */
+    protected int getBaseImageIndex() {
+        return this.store == null ? this.imageIndex : this.store.getBaseImageIndex(this.storeSlot);
+    }
+
+    protected void setBaseImageIndex(int imageIndex) {
+        if (this.store == null) {
+            this.imageIndex = imageIndex;
+        } else {
+            this.store.setBaseImageIndex(this.storeSlot, imageIndex);
+        }
     }
 
     public PImage getCurrentImage(){
-        return this.images.get(this.imageIndex % this.images.size());
+        return this.images.get(this.getImageIndex() % this.images.size());
     }
 
     /**
      * Helper method for testing. Preserve this functionality while refactoring.
      */
     public String log(){
-        return this.id.isEmpty() ? null :
-                String.format("%s %d %d %d", this.id, this.position.x, this.position.y, this.imageIndex);
+        return this.id.isEmpty() ? null : formatLog(this.id, this.getPosition().x, this.getPosition().y, this.getImageIndex());
+    }
+
+    /**
+     * @return The log line of an entity with this id, position and image index.
+     */
+    public static String formatLog(String id, int x, int y, int imageIndex) {
+        return String.format("%s %d %d %d", id, x, y, imageIndex);
     }
 
 }
\ No newline at end of file
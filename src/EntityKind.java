@@ -1,3 +1,28 @@
+/**
+ * The concrete kinds of entity in the world. Each kind has one bit in an int mask, so a set
+ * of kinds (e.g. the kinds a Dude can harvest) is a single precomputed int.
+ *
+ * When a query for several kinds finds matches at the same distance, the kind declared
+ * first here wins.
+ */
 public enum EntityKind {
-    HOUSE, DUDE_FULL, DUDE_NOT_FULL, OBSTACLE, FAIRY, STUMP, SAPLING, TREE
+    HOUSE, DUDE_FULL, DUDE_NOT_FULL, OBSTACLE, FAIRY, STUMP, TREE, SAPLING;
+
+    public static final int COUNT = values().length;
+    public static final int PLANTS = TREE.mask() | SAPLING.mask();
+    public static final int DUDES = DUDE_FULL.mask() | DUDE_NOT_FULL.mask();
+
+    /**
+     * @return The mask with only this kind's bit set.
+     */
+    public int mask() {
+        return 1 << this.ordinal();
+    }
+
+    /**
+     * @return Whether this kind's bit is set in mask.
+     */
+    public boolean in(int mask) {
+        return (mask & this.mask()) != 0;
+    }
 }
@@ -0,0 +1,129 @@
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * The entities of a world in a dense array. Each entity remembers its slot, so contains and
+ * remove take constant time; removing an entity moves the last entity into its slot.
+ *
+ * Loops that must not allocate can walk the slots with size() and get(int) instead of an
+ * iterator. The order is the order entities were added in until one is removed, after which
+ * the last entity takes the removed one's place. Removing through an iterator (and so
+ * removeIf and retainAll) visits the moved entity next, so none is skipped.
+ */
+public final class EntityList extends AbstractCollection<Entity> {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private Entity[] entities;
+    private int size;
+    private int modCount;
+
+    public EntityList() {
+        this.entities = new Entity[INITIAL_CAPACITY];
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * @param slot An index from 0 to size() - 1.
+     */
+    public Entity get(int slot) {
+        if (slot < 0 || slot >= this.size) {
+            throw new IndexOutOfBoundsException(slot);
+        }
+        return this.entities[slot];
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (!(o instanceof Entity entity)) {
+            return false;
+        }
+        int slot = entity.getListSlot();
+        return slot >= 0 && slot < this.size && this.entities[slot] == entity;
+    }
+
+    /**
+     * Adds an entity to the end of the list.
+     * @return false if the entity was already in the list.
+     */
+    @Override
+    public boolean add(Entity entity) {
+        if (this.contains(entity)) {
+            return false;
+        }
+        if (this.size == this.entities.length) {
+            this.entities = Arrays.copyOf(this.entities, this.size * 2);
+        }
+        entity.setListSlot(this.size);
+        this.entities[this.size++] = entity;
+        this.modCount++;
+        return true;
+    }
+
+    /**
+     * Removes an entity by moving the last entity into its slot.
+     * @return false if the entity was not in the list.
+     */
+    @Override
+    public boolean remove(Object o) {
+        if (!this.contains(o)) {
+            return false;
+        }
+        Entity entity = (Entity) o;
+        int slot = entity.getListSlot();
+        Entity last = this.entities[--this.size];
+        this.entities[slot] = last;
+        last.setListSlot(slot);
+        this.entities[this.size] = null;
+        entity.setListSlot(-1);
+        this.modCount++;
+        return true;
+    }
+
+    @Override
+    public Iterator<Entity> iterator() {
+        return new Iterator<>() {
+            private int next = 0;
+            private int lastReturned = -1;
+            private int expectedModCount = modCount;
+
+            @Override
+            public boolean hasNext() {
+                return this.next < size;
+            }
+
+            @Override
+            public Entity next() {
+                if (modCount != this.expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+                if (this.next >= size) {
+                    throw new NoSuchElementException();
+                }
+                this.lastReturned = this.next;
+                return entities[this.next++];
+            }
+
+            @Override
+            public void remove() {
+                if (this.lastReturned < 0) {
+                    throw new IllegalStateException();
+                }
+                if (modCount != this.expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+                EntityList.this.remove(entities[this.lastReturned]);
+                // the last entity now sits in the slot just returned, so visit it next
+                this.next = this.lastReturned;
+                this.lastReturned = -1;
+                this.expectedModCount = modCount;
+            }
+        };
+    }
+}
@@ -0,0 +1,69 @@
+import java.util.Arrays;
+
+/**
+ * The entities of a world grouped by EntityKind. Each kind's entities are kept in a dense
+ * array; an entity remembers its slot, and removing it moves the last entity of its kind
+ * into that slot. Adding, removing and counting never allocate once the arrays are big
+ * enough.
+ */
+public final class EntityRegistry {
+    private static final int INITIAL_CAPACITY = 16;
+    private static final EntityKind[] KINDS = EntityKind.values();
+
+    private final Entity[][] members;
+    private final int[] counts;
+
+    public EntityRegistry() {
+        this.members = new Entity[EntityKind.COUNT][INITIAL_CAPACITY];
+        this.counts = new int[EntityKind.COUNT];
+    }
+
+    public void add(Entity entity) {
+        int kind = entity.getKind().ordinal();
+        if (this.counts[kind] == this.members[kind].length) {
+            this.members[kind] = Arrays.copyOf(this.members[kind], this.counts[kind] * 2);
+        }
+        entity.setKindSlot(this.counts[kind]);
+        this.members[kind][this.counts[kind]++] = entity;
+    }
+
+    public void remove(Entity entity) {
+        int kind = entity.getKind().ordinal();
+        int slot = entity.getKindSlot();
+        Entity last = this.members[kind][--this.counts[kind]];
+        this.members[kind][slot] = last;
+        last.setKindSlot(slot);
+        this.members[kind][this.counts[kind]] = null;
+        entity.setKindSlot(-1);
+    }
+
+    /**
+     * @param mask The kinds to count, as an EntityKind mask.
+     * @return The number of entities of those kinds.
+     */
+    public int count(int mask) {
+        int total = 0;
+        for (EntityKind kind : KINDS) {
+            if (kind.in(mask)) {
+                total += this.counts[kind.ordinal()];
+            }
+        }
+        return total;
+    }
+
+    public int count(EntityKind kind) {
+        return this.counts[kind.ordinal()];
+    }
+
+    /**
+     * @param kind The kind of entity.
+     * @param slot An index from 0 to count(kind) - 1.
+     * @return The entity in that slot. Slots change when entities of the kind are removed.
+     */
+    public Entity get(EntityKind kind, int slot) {
+        if (slot < 0 || slot >= this.counts[kind.ordinal()]) {
+            throw new IndexOutOfBoundsException(slot);
+        }
+        return this.members[kind.ordinal()][slot];
+    }
+}
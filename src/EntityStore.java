@@ -0,0 +1,274 @@
+import processing.core.PImage;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Keeps the changing state of a world's entities in parallel arrays instead of in the
+ * entity objects: positions, kinds, image indices, animation and action periods, health and
+ * resource counts. An entity in a store becomes a view of its slot; its getters and setters
+ * read and write the arrays, and its own fields are only used again once it leaves. Passes
+ * over every entity, such as WorldModel.log, walk the primitive arrays instead of the
+ * entities.
+ *
+ * Apart from the entity array itself, the arrays hold primitives: positions come back as the
+ * world's cached Points, images from the entity's own list, and every closed-form animation
+ * runs on the one scheduler clock the world shares.
+ *
+ * Slots are dense. Removing an entity moves the last entity into its slot, and the removed
+ * entity gets its state back in its own fields, so it still works outside the world. Since
+ * WorldModel's EntityList removes the same way, slots are in the same order as the world's
+ * entities.
+ */
+public final class EntityStore {
+    private static final int INITIAL_CAPACITY = 64;
+    private static final EntityKind[] KINDS = EntityKind.values();
+
+    private WorldModel world;
+    private int size;
+    private Entity[] entities;
+    private int[] xs;
+    private int[] ys;
+    private byte[] kinds;
+    private int[] imageIndices;
+    private double[] animationPeriods;
+    private double[] actionPeriods;
+    private int[] healths;
+    private int[] resourceCounts;
+
+    // closed-form animation: the clock shared by every clocked slot, whether each slot is on
+    // it, when the count started, and how many frames to stop after (0 for never)
+    private EventScheduler animationClock;
+    private boolean[] clocked;
+    private double[] animationStarts;
+    private int[] animationFrames;
+
+    public EntityStore() {
+        this.entities = new Entity[INITIAL_CAPACITY];
+        this.xs = new int[INITIAL_CAPACITY];
+        this.ys = new int[INITIAL_CAPACITY];
+        this.kinds = new byte[INITIAL_CAPACITY];
+        this.imageIndices = new int[INITIAL_CAPACITY];
+        this.animationPeriods = new double[INITIAL_CAPACITY];
+        this.actionPeriods = new double[INITIAL_CAPACITY];
+        this.healths = new int[INITIAL_CAPACITY];
+        this.resourceCounts = new int[INITIAL_CAPACITY];
+        this.clocked = new boolean[INITIAL_CAPACITY];
+        this.animationStarts = new double[INITIAL_CAPACITY];
+        this.animationFrames = new int[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Called by WorldModel.useEntityStore. Positions are handed out as the world's Points.
+     */
+    public void setWorld(WorldModel world) {
+        this.world = world;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public Entity getEntity(int slot) {
+        return this.entities[slot];
+    }
+
+    /**
+     * Moves an entity's state into a new slot and makes the entity a view of it.
+     */
+    public void add(Entity entity) {
+        if (entity.getEntityStore() != null) {
+            throw new IllegalArgumentException("Entity is already in a store: " + entity.getId());
+        }
+        if (this.size == this.entities.length) {
+            this.grow();
+        }
+        int slot = this.size++;
+        this.entities[slot] = entity;
+        this.kinds[slot] = (byte) entity.getKind().ordinal();
+        this.clocked[slot] = false;
+        entity.copyTo(this, slot);
+        entity.setEntityStore(this, slot);
+    }
+
+    /**
+     * Gives an entity its state back and frees its slot.
+     */
+    public void remove(Entity entity) {
+        if (entity.getEntityStore() != this) {
+            throw new IllegalArgumentException("Entity is not in this store: " + entity.getId());
+        }
+        int slot = entity.getStoreSlot();
+        entity.setEntityStore(null, -1);
+        entity.copyFrom(this, slot);
+
+        int last = --this.size;
+        if (slot != last) {
+            this.moveSlot(last, slot);
+            this.entities[slot].setEntityStore(this, slot);
+        }
+        this.entities[last] = null;
+    }
+
+    /**
+     * @return The number of entities of the kinds in an EntityKind mask, counted from the
+     * kind array alone.
+     */
+    public int count(int kindMask) {
+        int total = 0;
+        for (int slot = 0; slot < this.size; slot++) {
+            total += (kindMask >>> this.kinds[slot]) & 1;
+        }
+        return total;
+    }
+
+    /**
+     * Adds the log line of every entity in the store to lines, in slot order.
+     */
+    public void log(List<String> lines) {
+        for (int slot = 0; slot < this.size; slot++) {
+            String id = this.entities[slot].getId();
+            if (!id.isEmpty()) {
+                lines.add(Entity.formatLog(id, this.xs[slot], this.ys[slot], this.getImageIndex(slot)));
+            }
+        }
+    }
+
+    public Point getPosition(int slot) {
+        return this.world.pointAt(this.xs[slot], this.ys[slot]);
+    }
+
+    public void setPosition(int slot, Point position) {
+        this.xs[slot] = position.x;
+        this.ys[slot] = position.y;
+    }
+
+    public int getX(int slot) {
+        return this.xs[slot];
+    }
+
+    public int getY(int slot) {
+        return this.ys[slot];
+    }
+
+    public EntityKind getKind(int slot) {
+        return KINDS[this.kinds[slot]];
+    }
+
+    public int getBaseImageIndex(int slot) {
+        return this.imageIndices[slot];
+    }
+
+    public void setBaseImageIndex(int slot, int imageIndex) {
+        this.imageIndices[slot] = imageIndex;
+    }
+
+    /**
+     * @return The slot's image index, including frames elapsed on its animation clock.
+     */
+    public int getImageIndex(int slot) {
+        if (!this.clocked[slot]) {
+            return this.imageIndices[slot];
+        }
+        int frames = (int) ((this.animationClock.getCurrentTime() - this.animationStarts[slot]) / this.animationPeriods[slot]);
+        if (this.animationFrames[slot] > 0) {
+            frames = Math.min(frames, this.animationFrames[slot]);
+        }
+        return this.imageIndices[slot] + frames;
+    }
+
+    public PImage getCurrentImage(int slot) {
+        List<PImage> slotImages = this.entities[slot].images;
+        return slotImages.get(this.getImageIndex(slot) % slotImages.size());
+    }
+
+    public EventScheduler getAnimationClock(int slot) {
+        return this.clocked[slot] ? this.animationClock : null;
+    }
+
+    public double getAnimationStart(int slot) {
+        return this.animationStarts[slot];
+    }
+
+    public int getAnimationFrames(int slot) {
+        return this.animationFrames[slot];
+    }
+
+    /**
+     * @param clock The scheduler whose clock drives the slot's frames, or null for events.
+     */
+    public void setAnimationClock(int slot, EventScheduler clock, double start, int frames) {
+        if (clock != null && this.animationClock != null && clock != this.animationClock) {
+            throw new IllegalArgumentException("EntityStore requires every entity to animate on one scheduler");
+        }
+        if (clock != null) {
+            this.animationClock = clock;
+        }
+        this.clocked[slot] = clock != null;
+        this.animationStarts[slot] = start;
+        this.animationFrames[slot] = frames;
+    }
+
+    public double getAnimationPeriod(int slot) {
+        return this.animationPeriods[slot];
+    }
+
+    public void setAnimationPeriod(int slot, double animationPeriod) {
+        this.animationPeriods[slot] = animationPeriod;
+    }
+
+    public double getActionPeriod(int slot) {
+        return this.actionPeriods[slot];
+    }
+
+    public void setActionPeriod(int slot, double actionPeriod) {
+        this.actionPeriods[slot] = actionPeriod;
+    }
+
+    public int getHealth(int slot) {
+        return this.healths[slot];
+    }
+
+    public void setHealth(int slot, int health) {
+        this.healths[slot] = health;
+    }
+
+    public int getResourceCount(int slot) {
+        return this.resourceCounts[slot];
+    }
+
+    public void setResourceCount(int slot, int resourceCount) {
+        this.resourceCounts[slot] = resourceCount;
+    }
+
+    private void moveSlot(int from, int to) {
+        this.entities[to] = this.entities[from];
+        this.xs[to] = this.xs[from];
+        this.ys[to] = this.ys[from];
+        this.kinds[to] = this.kinds[from];
+        this.imageIndices[to] = this.imageIndices[from];
+        this.animationPeriods[to] = this.animationPeriods[from];
+        this.actionPeriods[to] = this.actionPeriods[from];
+        this.healths[to] = this.healths[from];
+        this.resourceCounts[to] = this.resourceCounts[from];
+        this.clocked[to] = this.clocked[from];
+        this.animationStarts[to] = this.animationStarts[from];
+        this.animationFrames[to] = this.animationFrames[from];
+    }
+
+    private void grow() {
+        int capacity = this.entities.length * 2;
+        this.entities = Arrays.copyOf(this.entities, capacity);
+        this.xs = Arrays.copyOf(this.xs, capacity);
+        this.ys = Arrays.copyOf(this.ys, capacity);
+        this.kinds = Arrays.copyOf(this.kinds, capacity);
+        this.imageIndices = Arrays.copyOf(this.imageIndices, capacity);
+        this.animationPeriods = Arrays.copyOf(this.animationPeriods, capacity);
+        this.actionPeriods = Arrays.copyOf(this.actionPeriods, capacity);
+        this.healths = Arrays.copyOf(this.healths, capacity);
+        this.resourceCounts = Arrays.copyOf(this.resourceCounts, capacity);
+        this.clocked = Arrays.copyOf(this.clocked, capacity);
+        this.animationStarts = Arrays.copyOf(this.animationStarts, capacity);
+        this.animationFrames = Arrays.copyOf(this.animationFrames, capacity);
+    }
+}
@@ -5,11 +5,22 @@
 public final class Event {
     private final Action action;
     private final double time;
+    private final long sequence;
     private final Entity entity;
 
-    public Event(Action action, double time, Entity entity) {
+    // Bookkeeping for the EventScheduler: the event's slot in the EventHeap, its
+    // neighbours in the list of events still pending for the same entity, and its
+    // neighbours in a TimingWheel slot.
+    private int heapIndex = -1;
+    private Event previousPending;
+    private Event nextPending;
+    private Event previousInSlot;
+    private Event nextInSlot;
+
+    public Event(Action action, double time, long sequence, Entity entity) {
         this.action = action;
         this.time = time;
+        this.sequence = sequence;
         this.entity = entity;
     }
 
@@ -21,7 +32,54 @@ public final class Event {
         return time;
     }
 
+    /**
+     * @return The order in which this event was scheduled; breaks ties between equal times.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
     public Entity getEntity() {
         return entity;
     }
+
+    public int getHeapIndex() {
+        return heapIndex;
+    }
+
+    public void setHeapIndex(int heapIndex) {
+        this.heapIndex = heapIndex;
+    }
+
+    public Event getPreviousPending() {
+        return previousPending;
+    }
+
+    public void setPreviousPending(Event previousPending) {
+        this.previousPending = previousPending;
+    }
+
+    public Event getNextPending() {
+        return nextPending;
+    }
+
+    public void setNextPending(Event nextPending) {
+        this.nextPending = nextPending;
+    }
+
+    public Event getPreviousInSlot() {
+        return previousInSlot;
+    }
+
+    public void setPreviousInSlot(Event previousInSlot) {
+        this.previousInSlot = previousInSlot;
+    }
+
+    public Event getNextInSlot() {
+        return nextInSlot;
+    }
+
+    public void setNextInSlot(Event nextInSlot) {
+        this.nextInSlot = nextInSlot;
+    }
 }
@@ -0,0 +1,154 @@
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * A binary min-heap of Events where every Event remembers its own slot in the heap.
+ * Knowing the slot lets an Event be removed in O(log n) instead of the linear scan
+ * that PriorityQueue.remove performs.
+ */
+public final class EventHeap implements EventQueue {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final Comparator<Event> comparator;
+    private Event[] heap;
+    private int size;
+
+    /**
+     * Creates a new, empty EventHeap ordered by EventScheduler.EVENT_ORDER.
+     */
+    public EventHeap() {
+        this(EventScheduler.EVENT_ORDER);
+    }
+
+    /**
+     * Creates a new, empty EventHeap.
+     * @param comparator The order in which events leave the heap.
+     */
+    public EventHeap(Comparator<Event> comparator) {
+        this.comparator = comparator;
+        this.heap = new Event[INITIAL_CAPACITY];
+        this.size = 0;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * @return The earliest event, or null if the heap is empty.
+     */
+    @Override
+    public Event peek() {
+        return this.size == 0 ? null : this.heap[0];
+    }
+
+    /**
+     * Removes and returns the earliest event.
+     * @return The earliest event, or null if the heap is empty.
+     */
+    @Override
+    public Event poll() {
+        if (this.size == 0) {
+            return null;
+        }
+        Event first = this.heap[0];
+        this.removeAt(0);
+        return first;
+    }
+
+    /**
+     * Adds an event to the heap.
+     * @param event An event that is not currently in any heap.
+     */
+    @Override
+    public void add(Event event) {
+        if (this.size == this.heap.length) {
+            this.heap = Arrays.copyOf(this.heap, this.heap.length * 2);
+        }
+        this.heap[this.size] = event;
+        event.setHeapIndex(this.size);
+        this.size++;
+        this.siftUp(this.size - 1);
+    }
+
+    /**
+     * Removes an event from the heap using the slot stored in the event.
+     * @param event The event to remove.
+     * @return true if the event was in this heap.
+     */
+    @Override
+    public boolean remove(Event event) {
+        int index = event.getHeapIndex();
+        if (index < 0 || index >= this.size || this.heap[index] != event) {
+            return false;
+        }
+        this.removeAt(index);
+        return true;
+    }
+
+    private void removeAt(int index) {
+        Event removed = this.heap[index];
+        removed.setHeapIndex(-1);
+        this.size--;
+
+        if (index != this.size) {
+            Event last = this.heap[this.size];
+            this.heap[index] = last;
+            last.setHeapIndex(index);
+            this.heap[this.size] = null;
+            if (!this.siftUp(index)) {
+                this.siftDown(index);
+            }
+        } else {
+            this.heap[index] = null;
+        }
+    }
+
+    /**
+     * Moves the event at index toward the root until the heap order holds.
+     * @return true if the event moved.
+     */
+    private boolean siftUp(int index) {
+        Event event = this.heap[index];
+        int start = index;
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            Event parentEvent = this.heap[parent];
+            if (this.comparator.compare(event, parentEvent) >= 0) {
+                break;
+            }
+            this.heap[index] = parentEvent;
+            parentEvent.setHeapIndex(index);
+            index = parent;
+        }
+        this.heap[index] = event;
+        event.setHeapIndex(index);
+        return index != start;
+    }
+
+    private void siftDown(int index) {
+        Event event = this.heap[index];
+        int half = this.size >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            int right = child + 1;
+            if (right < this.size && this.comparator.compare(this.heap[right], this.heap[child]) < 0) {
+                child = right;
+            }
+            if (this.comparator.compare(event, this.heap[child]) <= 0) {
+                break;
+            }
+            this.heap[index] = this.heap[child];
+            this.heap[index].setHeapIndex(index);
+            index = child;
+        }
+        this.heap[index] = event;
+        event.setHeapIndex(index);
+    }
+}
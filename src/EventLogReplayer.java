@@ -0,0 +1,122 @@
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Checks a run of the simulation against an event log written by EventLogWriter.
+ * Attach it to a scheduler driving a world created with getSeed(), and it compares every
+ * executed event with the next recorded one. finish compares the final WorldModel.log().
+ * The first difference is reported as an IllegalStateException. The run has to stop at
+ * getEndTime(), the time the recorded run stopped at.
+ *
+ * The whole log is read up front, since the end time is only written after the events.
+ */
+public final class EventLogReplayer implements EventRecorder {
+    // the header is MAGIC, VERSION and the seed; an event is its kind, time, x and y
+    private static final int EVENTS_START = 4 + 4 + 8;
+    private static final int EVENT_SIZE = 1 + 8 + 4 + 4;
+
+    private final DataInputStream in;
+    private final long seed;
+    private final double endTime;
+    private long eventCount;
+
+    /**
+     * Creates a new EventLogReplayer and reads the log's header and end time.
+     * @param in The recorded log. It is read to the end and closed.
+     */
+    public EventLogReplayer(InputStream in) throws IOException {
+        byte[] bytes;
+        try (in) {
+            bytes = in.readAllBytes();
+        }
+        this.in = new DataInputStream(new ByteArrayInputStream(bytes));
+        if (this.in.readInt() != EventLogWriter.MAGIC || this.in.readInt() != EventLogWriter.VERSION) {
+            throw new IllegalArgumentException("not a recognised event log");
+        }
+        this.seed = this.in.readLong();
+        this.endTime = readEndTime(bytes);
+        this.eventCount = 0;
+    }
+
+    /**
+     * Skips the fixed-size event records to the END_OF_EVENTS marker.
+     */
+    private static double readEndTime(byte[] bytes) throws IOException {
+        DataInputStream log = new DataInputStream(new ByteArrayInputStream(bytes));
+        log.skipNBytes(EVENTS_START);
+        while (log.readByte() != EventLogWriter.END_OF_EVENTS) {
+            log.skipNBytes(EVENT_SIZE - 1);
+        }
+        return log.readDouble();
+    }
+
+    /**
+     * @return The seed the recorded world was created with.
+     */
+    public long getSeed() {
+        return this.seed;
+    }
+
+    /**
+     * @return The scheduler time the recorded run stopped at.
+     */
+    public double getEndTime() {
+        return this.endTime;
+    }
+
+    @Override
+    public void recordEvent(double time, ActionKind kind, Entity entity) {
+        try {
+            int recordedKind = this.in.readByte();
+            if (recordedKind == EventLogWriter.END_OF_EVENTS) {
+                throw this.divergence("the recording ended, but the run executed " + kind + " at " + time);
+            }
+            double recordedTime = this.in.readDouble();
+            int recordedX = this.in.readInt();
+            int recordedY = this.in.readInt();
+            Point pos = entity.getPosition();
+
+            if (recordedKind != kind.ordinal() || recordedTime != time || recordedX != pos.x || recordedY != pos.y) {
+                throw this.divergence(String.format("recorded %s at %s for %s, but ran %s at %s for %s",
+                        ActionKind.values()[recordedKind], recordedTime, new Point(recordedX, recordedY), kind, time, pos));
+            }
+            this.eventCount++;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Checks that the run executed every recorded event and ended in the recorded state.
+     * @param worldLog The WorldModel.log() at the end of the replay.
+     */
+    @Override
+    public void finish(double endTime, List<String> worldLog) {
+        try (DataInputStream log = this.in) {
+            if (log.readByte() != EventLogWriter.END_OF_EVENTS) {
+                throw this.divergence("the run stopped before the recording did");
+            }
+            if (log.readDouble() != endTime) {
+                throw this.divergence("the recording ran until " + this.endTime + ", but the run stopped at " + endTime);
+            }
+            int size = log.readInt();
+            List<String> recorded = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                recorded.add(log.readUTF());
+            }
+            List<String> sorted = new ArrayList<>(worldLog);
+            Collections.sort(sorted);
+            if (!recorded.equals(sorted)) {
+                throw new IllegalStateException("replay finished in a different state: recorded " + recorded + ", got " + sorted);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private IllegalStateException divergence(String detail) {
+        return new IllegalStateException("replay diverged after " + this.eventCount + " events: " + detail);
+    }
+}
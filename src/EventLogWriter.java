@@ -0,0 +1,66 @@
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Records every executed event into a compact binary event log.
+ *
+ * The log starts with a header (MAGIC, VERSION, the world's random seed). Each event is then
+ * 17 bytes: its ActionKind ordinal, its time, and the x and y of its entity when it ran. After
+ * the last event come an END_OF_EVENTS marker, the time the run ended at, and the sorted
+ * WorldModel.log() at the end of the run, which a replay is checked against.
+ */
+public final class EventLogWriter implements EventRecorder {
+    public static final int MAGIC = 0x46504556; // "FPEV"
+    public static final int VERSION = 2;
+    public static final int END_OF_EVENTS = -1;
+
+    private final DataOutputStream out;
+
+    /**
+     * Creates a new EventLogWriter and writes the log's header.
+     * @param out Where the log is written. It is closed by finish.
+     * @param seed The seed of the world being recorded.
+     */
+    public EventLogWriter(OutputStream out, long seed) throws IOException {
+        this.out = new DataOutputStream(new BufferedOutputStream(out));
+        this.out.writeInt(MAGIC);
+        this.out.writeInt(VERSION);
+        this.out.writeLong(seed);
+    }
+
+    @Override
+    public void recordEvent(double time, ActionKind kind, Entity entity) {
+        try {
+            this.out.writeByte(kind.ordinal());
+            this.out.writeDouble(time);
+            this.out.writeInt(entity.getPosition().x);
+            this.out.writeInt(entity.getPosition().y);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Ends the event list, writes the final state of the world and closes the log.
+     * @param endTime The scheduler's time when the run stopped.
+     * @param worldLog The WorldModel.log() at the end of the run.
+     */
+    @Override
+    public void finish(double endTime, List<String> worldLog) {
+        List<String> sorted = new ArrayList<>(worldLog);
+        Collections.sort(sorted);
+        try {
+            this.out.writeByte(END_OF_EVENTS);
+            this.out.writeDouble(endTime);
+            this.out.writeInt(sorted.size());
+            for (String line : sorted) {
+                this.out.writeUTF(line);
+            }
+            this.out.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,15 @@
+/**
+ * The storage behind an EventScheduler: a collection of events that hands them back
+ * earliest first. Implementations may use the bookkeeping slots in Event to support
+ * cheap removal of arbitrary events.
+ */
+public interface EventQueue {
+
+    //implemented in the EventHeap and TimingWheel classes
+    public boolean isEmpty();
+    public int size();
+    public Event peek();
+    public Event poll();
+    public void add(Event event);
+    public boolean remove(Event event);
+}
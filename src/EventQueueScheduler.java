@@ -0,0 +1,72 @@
+/**
+ * An EventScheduler that keeps an Event and an Action object for every scheduled event.
+ * Events are kept in an EventQueue (an indexed heap by default, or a TimingWheel), and the
+ * events still pending for each entity are linked through the events themselves, so
+ * cancelling an entity's events is cheap and scheduling allocates nothing beyond the Event.
+ */
+public final class EventQueueScheduler extends EventScheduler {
+    private final EventQueue eventQueue;
+
+    public EventQueueScheduler() {
+        this(new EventHeap());
+    }
+
+    /**
+     * Creates a new EventQueueScheduler.
+     * @param eventQueue The queue that holds the scheduled events.
+     */
+    public EventQueueScheduler(EventQueue eventQueue) {
+        this.eventQueue = eventQueue;
+    }
+
+    @Override
+    public void updateOnTime(double time) {
+        double stopTime = this.currentTime + time;
+        while (!this.eventQueue.isEmpty() && this.eventQueue.peek().getTime() <= stopTime) {
+            Event next = this.eventQueue.poll();
+            next.getEntity().removePendingEvent(next);
+            this.currentTime = next.getTime();
+            this.executing(next.getTime(), next.getAction().getKind(), next.getEntity());
+            next.getAction().executeAction(this);
+        }
+        this.currentTime = stopTime;
+    }
+
+    @Override
+    public int getQueueSize() {
+        return this.eventQueue.size();
+    }
+
+    @Override
+    public void unscheduleAllEvents(Entity entity) {
+        Event pending = entity.getPendingEvents();
+        entity.setPendingEvents(null);
+
+        while (pending != null) {
+            Event next = pending.getNextPending();
+            this.eventQueue.remove(pending);
+            pending.setPreviousPending(null);
+            pending.setNextPending(null);
+            pending = next;
+        }
+    }
+
+    @Override
+    public void scheduleActivity(ActivityEntity entity, WorldModel world, ImageStore imageStore, double afterPeriod) {
+        this.scheduleEvent(entity, new ActivityAction(entity, world, imageStore), afterPeriod);
+    }
+
+    @Override
+    protected void queueAnimation(AnimationEntity entity, int repeatCount, double afterPeriod) {
+        this.scheduleEvent(entity, new AnimationAction(entity, repeatCount), afterPeriod);
+    }
+
+    public void scheduleEvent(Entity entity, Action action, double afterPeriod) {
+        double time = this.currentTime + afterPeriod;
+
+        Event event = new Event(action, time, this.nextSequence(), entity);
+
+        this.eventQueue.add(event);
+        entity.addPendingEvent(event);
+    }
+}
@@ -0,0 +1,11 @@
+import java.util.List;
+
+/**
+ * Something that is told about every event an EventScheduler executes, in order.
+ */
+public interface EventRecorder {
+
+    //implemented in the EventLogWriter and EventLogReplayer classes
+    public void recordEvent(double time, ActionKind kind, Entity entity);
+    public void finish(double endTime, List<String> worldLog);
+}
@@ -1,62 +1,134 @@
-import java.util.*;
+import java.util.Comparator;
 
 /**
- * Keeps track of events that have been scheduled.
+ * Keeps track of events that have been scheduled and runs them as simulated time passes.
+ * There are two kinds of schedulers in this World:
+ * - EventQueueScheduler: keeps an Event and an Action object for every scheduled event.
+ * - PrimitiveEventScheduler: keeps events as primitives in parallel arrays, so the
+ *      steady-state tick loop allocates nothing.
+ *
+ * Both run every event on one thread, in one total order. Activities call findNearest,
+ * which reads the whole world, and draw from the world's shared Random, so running the
+ * events of distant parts of the grid at the same time would change what a seeded run does.
  */
-public final class EventScheduler {
-    private final PriorityQueue<Event> eventQueue;
-    private final Map<Entity, List<Event>> pendingEvents;
-    private double currentTime;
+public abstract class EventScheduler {
+    public static final Comparator<Event> EVENT_ORDER = (event1, event2) -> compareEvents(event1.getTime(), event1.getSequence(), event2.getTime(), event2.getSequence());
+
+    protected double currentTime;
+    private long nextSequence;
+    private long eventCount;
+    private final long[] eventCountsByKind;
+    private boolean closedFormAnimation;
+    private EventRecorder recorder;
 
     public EventScheduler() {
-        this.eventQueue = new PriorityQueue<>((event1, event2) -> (int) (1000 * (event1.getTime() - event2.getTime())));
-        this.pendingEvents = new HashMap<>();
         this.currentTime = 0;
+        this.nextSequence = 0;
+        this.eventCount = 0;
+        this.eventCountsByKind = new long[ActionKind.values().length];
+        this.closedFormAnimation = false;
     }
 
-    public double getCurrentTime() {
-        return this.currentTime;
+    /**
+     * Orders two events: earlier time first, and events at the same time in the order they
+     * were scheduled. Every scheduler uses this so that they all run events in the same,
+     * total order.
+     */
+    public static int compareEvents(double time1, long sequence1, double time2, long sequence2) {
+        int byTime = Double.compare(time1, time2);
+        return byTime != 0 ? byTime : Long.compare(sequence1, sequence2);
     }
 
-    public void updateOnTime(double time) {
-        double stopTime = this.currentTime + time;
-        while (!this.eventQueue.isEmpty() && this.eventQueue.peek().getTime() <= stopTime) {
-            Event next = this.eventQueue.poll();
-            removePendingEvent(next);
-            this.currentTime = next.getTime();
-            next.getAction().executeAction(this);
-        }
-        this.currentTime = stopTime;
+    /**
+     * @return The sequence number for the next event to be scheduled.
+     */
+    protected long nextSequence() {
+        return this.nextSequence++;
     }
 
-    public void removePendingEvent(Event event) {
-        List<Event> pending = this.pendingEvents.get(event.getEntity());
+    /**
+     * Attaches a recorder that is told about every event just before it executes.
+     * @param recorder The recorder, or null to stop recording.
+     */
+    public void setRecorder(EventRecorder recorder) {
+        this.recorder = recorder;
+    }
 
-        if (pending != null) {
-            pending.remove(event);
-        }
+    public EventRecorder getRecorder() {
+        return this.recorder;
+    }
+
+    /**
+     * @return The number of events executed so far.
+     */
+    public long getEventCount() {
+        return this.eventCount;
     }
 
-    public void unscheduleAllEvents(Entity entity) {
-        List<Event> pending = this.pendingEvents.remove(entity);
+    /**
+     * @return The number of events of one kind executed so far.
+     */
+    public long getEventCount(ActionKind kind) {
+        return this.eventCountsByKind[kind.ordinal()];
+    }
 
-        if (pending != null) {
-            for (Event event : pending) {
-                this.eventQueue.remove(event);
-            }
+    /**
+     * Counts an event that is about to execute and passes it to the recorder, if there is one.
+     */
+    protected void executing(double time, ActionKind kind, Entity entity) {
+        this.eventCount++;
+        this.eventCountsByKind[kind.ordinal()]++;
+        if (this.recorder != null) {
+            this.recorder.recordEvent(time, kind, entity);
         }
     }
 
-    public void scheduleEvent(Entity entity, Action action, double afterPeriod) {
-        double time = this.currentTime + afterPeriod;
+    public double getCurrentTime() {
+        return this.currentTime;
+    }
 
-        Event event = new Event(action, time, entity);
+    public boolean isClosedFormAnimation() {
+        return this.closedFormAnimation;
+    }
 
-        this.eventQueue.add(event);
+    /**
+     * In closed-form animation mode no animation events are queued at all. Instead each
+     * AnimationEntity works out its frame from this scheduler's clock whenever it is read.
+     * @param closedFormAnimation true to derive frames from the clock, false to queue events.
+     */
+    public void setClosedFormAnimation(boolean closedFormAnimation) {
+        this.closedFormAnimation = closedFormAnimation;
+    }
 
-        // update list of pending events for the given entity
-        List<Event> pending = this.pendingEvents.getOrDefault(entity, new LinkedList<>());
-        pending.add(event);
-        this.pendingEvents.put(entity, pending);
+    //implemented in the EventQueueScheduler and PrimitiveEventScheduler classes
+    public abstract void updateOnTime(double time);
+    public abstract void unscheduleAllEvents(Entity entity);
+    public abstract int getQueueSize();
+
+    /**
+     * Schedules the entity's next activity.
+     * @param entity The entity that will execute its activity.
+     * @param world The game world.
+     * @param imageStore Stores all the images.
+     * @param afterPeriod The time (seconds) from now at which the activity happens.
+     */
+    public abstract void scheduleActivity(ActivityEntity entity, WorldModel world, ImageStore imageStore, double afterPeriod);
+
+    /**
+     * Schedules the entity's next animation frame, or starts its animation clock in
+     * closed-form animation mode.
+     * @param entity The entity that will move to its next image.
+     * @param repeatCount The number of frames left to show, or 0 to animate forever.
+     * @param afterPeriod The time (seconds) from now at which the frame changes.
+     */
+    public void scheduleAnimation(AnimationEntity entity, int repeatCount, double afterPeriod) {
+        if (this.closedFormAnimation) {
+            entity.startAnimationClock(this, repeatCount);
+        } else {
+            this.queueAnimation(entity, repeatCount, afterPeriod);
+        }
     }
+
+    //implemented in the EventQueueScheduler and PrimitiveEventScheduler classes
+    protected abstract void queueAnimation(AnimationEntity entity, int repeatCount, double afterPeriod);
 }
@@ -1,6 +1,5 @@
 import processing.core.PImage;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 
@@ -18,6 +17,16 @@ public class Fairy extends MotionEntity{
         super(id, position, images, actionPeriod, animationPeriod);
     }
 
+    @Override
+    public EntityKind getKind() {
+        return EntityKind.FAIRY;
+    }
+
+    @Override
+    public int getTargetKinds() {
+        return EntityKind.STUMP.mask();
+    }
+
     /**
      * Adds an activity to the scheduler.
      * @param world      The game world.
@@ -26,10 +35,10 @@ public class Fairy extends MotionEntity{
      */
     @Override
     public void executeActivity(WorldModel world, ImageStore imageStore, EventScheduler scheduler) {
-        Optional<Entity> fairyTarget = world.findNearest(this.position, new ArrayList<>(List.of(Stump.class)));
+        Optional<Entity> fairyTarget = world.findNearest(this.getPosition(), this.getTargetKinds());
 
         if (fairyTarget.isPresent()) {
-            Point tgtPos = fairyTarget.get().position;
+            Point tgtPos = fairyTarget.get().getPosition();
 
             if (this.moveTo(world, fairyTarget.get(), scheduler)) {
 
@@ -39,8 +48,7 @@ public class Fairy extends MotionEntity{
                 sapling.scheduleActions(scheduler, world, imageStore);
             }
         }
-        ActivityAction newAction = new ActivityAction(this, world, imageStore);
-        scheduler.scheduleEvent(this, newAction, this.actionPeriod);
+        scheduler.scheduleActivity(this, world, imageStore, this.actionPeriod);
     }
 
     /**
@@ -51,13 +59,13 @@ public class Fairy extends MotionEntity{
      */
     @Override
     public boolean moveTo(WorldModel world, Entity target, EventScheduler scheduler) {
-        if (this.position.adjacent(target.position)) {
+        if (this.getPosition().adjacent(target.getPosition())) {
             world.removeEntity(scheduler, target);
             return true;
         } else {
-            Point nextPos = this.nextPosition(world, target.position);
+            Point nextPos = this.nextPosition(world, target.getPosition());
 
-            if (!this.position.equals(nextPos)) {
+            if (!this.getPosition().equals(nextPos)) {
                 world.moveEntity(scheduler, this, nextPos);
             }
             return false;
@@ -67,22 +75,27 @@ public class Fairy extends MotionEntity{
     /**
      * updates the Fairy's position depending on the target
      * @param world      The game world.
-     * @param destPos     The location of the entity the Fairy should move toward.
+     * @param destX      The column of the entity the Fairy should move toward.
+     * @param destY      The row of the entity the Fairy should move toward.
+     * @return The packed coordinate of the Fairy's next position.
      */
     @Override
-    public Point nextPosition(WorldModel world, Point destPos) {
-        int horiz = Integer.signum(destPos.x - this.position.x);
-        Point newPos = new Point(this.position.x + horiz, this.position.y);
+    public long nextPackedPosition(WorldModel world, int destX, int destY) {
+        Point position = this.getPosition();
+        int horiz = Integer.signum(destX - position.x);
+        int newX = position.x + horiz;
+        int newY = position.y;
 
-        if (horiz == 0 || world.isOccupied(newPos)) {
-            int vert = Integer.signum(destPos.y - this.position.y);
-            newPos = new Point(this.position.x, this.position.y + vert);
+        if (horiz == 0 || world.isOccupied(newX, newY)) {
+            int vert = Integer.signum(destY - position.y);
+            newX = position.x;
+            newY = position.y + vert;
 
-            if (vert == 0 || world.isOccupied(newPos)) {
-                newPos = this.position;
+            if (vert == 0 || world.isOccupied(newX, newY)) {
+                return position.pack();
             }
         }
 
-        return newPos;
+        return Point.pack(newX, newY);
     }
 }
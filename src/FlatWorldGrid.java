@@ -0,0 +1,94 @@
+import java.util.Arrays;
+
+/**
+ * A WorldGrid stored flat: cell (x, y) is index y * cols + x of each array.
+ */
+public final class FlatWorldGrid extends WorldGrid {
+    private final int rows;
+    private final int cols;
+    private final short[] backgrounds;
+    private final int[] occupancy;
+    private final Point[] points;
+
+    /**
+     * Creates a new FlatWorldGrid with no backgrounds and no occupants.
+     * @param rows The number of rows.
+     * @param cols The number of columns.
+     */
+    public FlatWorldGrid(int rows, int cols) {
+        this.rows = rows;
+        this.cols = cols;
+        this.backgrounds = new short[rows * cols];
+        this.occupancy = new int[rows * cols];
+        this.points = new Point[rows * cols];
+    }
+
+    @Override
+    public int getRows() {
+        return this.rows;
+    }
+
+    @Override
+    public int getCols() {
+        return this.cols;
+    }
+
+    @Override
+    public boolean withinBounds(int x, int y) {
+        return y >= 0 && y < this.rows && x >= 0 && x < this.cols;
+    }
+
+    /**
+     * @return The index of cell (x, y) in the flat arrays. (x, y) must be within bounds.
+     */
+    public int cellIndex(int x, int y) {
+        return y * this.cols + x;
+    }
+
+    @Override
+    public Point pointAt(int x, int y) {
+        int cell = this.cellIndex(x, y);
+        Point point = this.points[cell];
+        if (point == null) {
+            point = new Point(x, y);
+            this.points[cell] = point;
+        }
+        return point;
+    }
+
+    @Override
+    public int getBackgroundIndex(int x, int y) {
+        return this.backgrounds[this.cellIndex(x, y)] & 0xffff;
+    }
+
+    @Override
+    protected void setBackgroundIndex(int x, int y, int index) {
+        this.backgrounds[this.cellIndex(x, y)] = (short) index;
+    }
+
+    @Override
+    public void fillBackground(Background background) {
+        Arrays.fill(this.backgrounds, (short) this.paletteIndexOf(background));
+    }
+
+    @Override
+    public void clearBackgrounds() {
+        Arrays.fill(this.backgrounds, (short) NO_BACKGROUND);
+    }
+
+    @Override
+    public int getOccupantHandle(int x, int y) {
+        return this.occupancy[this.cellIndex(x, y)];
+    }
+
+    @Override
+    protected void setOccupantHandle(int x, int y, int handle) {
+        this.occupancy[this.cellIndex(x, y)] = handle;
+    }
+
+    @Override
+    public void clearOccupants() {
+        super.clearOccupants();
+        Arrays.fill(this.occupancy, EMPTY);
+    }
+}
@@ -0,0 +1,244 @@
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+/**
+ * The distance from every cell of the world to the nearest entity of some kinds, found by
+ * one breadth-first search from all of those entities at once. A mover heading for the
+ * nearest of them just steps to whichever neighbouring cell is closer, so any number of
+ * movers share one search instead of each running their own.
+ *
+ * Dudes and Fairies move around, so they never block a field; a mover deals with another
+ * standing in its way when it steps. Other entities block a field unless their kind is one
+ * of its passable kinds. The world tells the field about each cell that changes, and the
+ * field repairs only the distances that change:
+ * - a new target, or a cell that opens up, can only bring cells closer, so distances are
+ *      relaxed outward from it;
+ * - a lost target, or a cell that fills up, can only push cells further, so the cells whose
+ *      shortest route ran through it are cleared and searched again from their neighbours.
+ *
+ * Fields cover the whole grid, so they need a world with a FlatWorldGrid.
+ */
+public final class FlowField {
+    public static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    private static final byte BLOCKED = 0;
+    private static final byte OPEN = 1;
+    private static final byte TARGET = 2;
+    private static final int MOVERS = EntityKind.DUDES | EntityKind.FAIRY.mask();
+
+    private final WorldModel world;
+    private final int targetKinds;
+    private final int passableKinds;
+    private final int rows;
+    private final int cols;
+    private final byte[] cells;
+    private final int[] distances;
+
+    /**
+     * Creates a new FlowField and searches the whole world.
+     * @param world The game world.
+     * @param targetKinds The kinds of entity to measure distances to, as an EntityKind mask.
+     * @param passableKinds The kinds of entity that can be walked over, as an EntityKind mask.
+     */
+    public FlowField(WorldModel world, int targetKinds, int passableKinds) {
+        this.world = world;
+        this.targetKinds = targetKinds;
+        this.passableKinds = passableKinds | MOVERS;
+        this.rows = world.getRows();
+        this.cols = world.getCols();
+        this.cells = new byte[this.rows * this.cols];
+        this.distances = new int[this.rows * this.cols];
+        this.rebuild();
+    }
+
+    public int getTargetKinds() {
+        return this.targetKinds;
+    }
+
+    public int getPassableKinds() {
+        return this.passableKinds & ~MOVERS;
+    }
+
+    /**
+     * @return The number of steps from (x, y) to a cell next to the nearest target, plus
+     *      one, or UNREACHABLE. Targets themselves are 0.
+     */
+    public int getDistance(int x, int y) {
+        if (x < 0 || x >= this.cols || y < 0 || y >= this.rows) {
+            return UNREACHABLE;
+        }
+        return this.distances[y * this.cols + x];
+    }
+
+    /**
+     * Works out the mover's next step toward the nearest target: the neighbouring cell it
+     * can enter that is closest to a target, if that is closer than where it stands.
+     * @param mover The entity that is moving.
+     * @return The packed cell to move to, which is the mover's own position if none is closer.
+     */
+    public long nextPackedPosition(MotionEntity mover) {
+        Point position = mover.getPosition();
+        long next = position.pack();
+        int best = this.getDistance(position.x, position.y);
+        for (int direction = 0; direction < 4; direction++) {
+            int x = position.x + (direction == 0 ? 1 : direction == 1 ? -1 : 0);
+            int y = position.y + (direction == 2 ? 1 : direction == 3 ? -1 : 0);
+            int distance = this.getDistance(x, y);
+            if (distance > 0 && distance < best && mover.canEnter(this.world, x, y)) {
+                best = distance;
+                next = Point.pack(x, y);
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Repairs the field after the occupant of (x, y) has changed.
+     */
+    public void cellChanged(int x, int y) {
+        int cell = y * this.cols + x;
+        byte before = this.cells[cell];
+        byte after = this.classify(x, y);
+        if (before == after) {
+            return;
+        }
+        this.cells[cell] = after;
+
+        if (after == TARGET) {
+            this.distances[cell] = 0;
+            this.relax(cell);
+        } else if (after == OPEN && before == BLOCKED) {
+            this.distances[cell] = this.bestFromNeighbours(cell);
+            if (this.distances[cell] != UNREACHABLE) {
+                this.relax(cell);
+            }
+        } else {
+            this.raise(cell);
+        }
+    }
+
+    private void rebuild() {
+        Arrays.fill(this.distances, UNREACHABLE);
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int y = 0; y < this.rows; y++) {
+            for (int x = 0; x < this.cols; x++) {
+                int cell = y * this.cols + x;
+                this.cells[cell] = this.classify(x, y);
+                if (this.cells[cell] == TARGET) {
+                    this.distances[cell] = 0;
+                    queue.add(cell);
+                }
+            }
+        }
+        this.spread(queue);
+    }
+
+    private byte classify(int x, int y) {
+        Entity occupant = this.world.getOccupancyCell(x, y);
+        if (occupant == null) {
+            return OPEN;
+        }
+        if (occupant.getKind().in(this.targetKinds)) {
+            return TARGET;
+        }
+        return occupant.getKind().in(this.passableKinds) ? OPEN : BLOCKED;
+    }
+
+    /**
+     * Lowers distances outward from a cell whose distance has just gone down.
+     */
+    private void relax(int cell) {
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        queue.add(cell);
+        this.spread(queue);
+    }
+
+    // breadth-first from cells in order of distance, lowering any open neighbour it can
+    private void spread(ArrayDeque<Integer> queue) {
+        while (!queue.isEmpty()) {
+            int cell = queue.poll();
+            int distance = this.distances[cell] + 1;
+            for (int direction = 0; direction < 4; direction++) {
+                int neighbour = this.neighbour(cell, direction);
+                if (neighbour >= 0 && this.cells[neighbour] == OPEN && distance < this.distances[neighbour]) {
+                    this.distances[neighbour] = distance;
+                    queue.add(neighbour);
+                }
+            }
+        }
+    }
+
+    /**
+     * Clears a cell whose distance may have gone up, along with every cell whose shortest
+     * route ran through it, then fills them in again from the cells around them.
+     */
+    private void raise(int cell) {
+        ArrayDeque<Integer> affected = new ArrayDeque<>();
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        queue.add(cell);
+        while (!queue.isEmpty()) {
+            int current = queue.poll();
+            if (this.distances[current] == UNREACHABLE) {
+                continue;
+            }
+            int distance = this.distances[current] + 1;
+            affected.add(current);
+            this.distances[current] = UNREACHABLE;
+            for (int direction = 0; direction < 4; direction++) {
+                int neighbour = this.neighbour(current, direction);
+                if (neighbour >= 0 && this.cells[neighbour] == OPEN && this.distances[neighbour] == distance) {
+                    queue.add(neighbour);
+                }
+            }
+        }
+
+        // distances here differ, so take the seeds lowest first
+        PriorityQueue<Long> seeds = new PriorityQueue<>();
+        for (int current : affected) {
+            if (this.cells[current] == OPEN) {
+                int distance = this.bestFromNeighbours(current);
+                if (distance != UNREACHABLE) {
+                    seeds.add(((long) distance << 32) | current);
+                }
+            }
+        }
+        while (!seeds.isEmpty()) {
+            long seed = seeds.poll();
+            int current = (int) seed;
+            int distance = (int) (seed >>> 32);
+            if (distance >= this.distances[current]) {
+                continue;
+            }
+            this.distances[current] = distance;
+            for (int direction = 0; direction < 4; direction++) {
+                int neighbour = this.neighbour(current, direction);
+                if (neighbour >= 0 && this.cells[neighbour] == OPEN && distance + 1 < this.distances[neighbour]) {
+                    seeds.add(((long) (distance + 1) << 32) | neighbour);
+                }
+            }
+        }
+    }
+
+    private int bestFromNeighbours(int cell) {
+        int best = UNREACHABLE;
+        for (int direction = 0; direction < 4; direction++) {
+            int neighbour = this.neighbour(cell, direction);
+            if (neighbour >= 0 && this.cells[neighbour] != BLOCKED && this.distances[neighbour] != UNREACHABLE) {
+                best = Math.min(best, this.distances[neighbour] + 1);
+            }
+        }
+        return best;
+    }
+
+    // the index of the cell next to cell in one of four directions, or -1 off the grid
+    private int neighbour(int cell, int direction) {
+        int x = cell % this.cols;
+        return switch (direction) {
+            case 0 -> x + 1 < this.cols ? cell + 1 : -1;
+            case 1 -> x > 0 ? cell - 1 : -1;
+            case 2 -> cell + this.cols < this.cells.length ? cell + this.cols : -1;
+            default -> cell - this.cols;
+        };
+    }
+}
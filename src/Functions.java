@@ -2,13 +2,11 @@ import java.util.*;
 
 public final class Functions {
 
-    public static int getIntFromRange(int max, int min) {
-        Random rand = new Random();
+    public static int getIntFromRange(Random rand, int max, int min) {
         return min + rand.nextInt(max-min);
     }
 
-    public static double getNumFromRange(double max, double min) {
-        Random rand = new Random();
+    public static double getNumFromRange(Random rand, double max, double min) {
         return min + rand.nextDouble() * (max - min);
     }
 
@@ -0,0 +1,176 @@
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+
+/**
+ * Runs a world as fast as the CPU allows, without a window, and reports how fast it went.
+ *
+ * Usage: HeadlessRunner worldFile seed duration step [-scheduler heap|wheel|primitive]
+ *        [-closedform] [-entitystore] [-pathfinding] [-flowfields] [-report seconds]
+ *        [-chunked rows cols [evictionDir]]
+ *
+ * With -chunked the world is a ChunkedWorldGrid of the given size, which may be far bigger
+ * than the heap. Cells the world file does not set get the default background, and changed
+ * chunks are written to evictionDir when evicted, or kept in memory without one.
+ *
+ * Every report interval (simulated seconds) it prints the events executed, the current queue
+ * depth and the number of entities of each kind. At the end it prints simulated seconds per
+ * wall-clock second, events per second and the peak queue depth. Images are never loaded;
+ * every entity gets the default image, which does not change what the simulation does.
+ */
+public final class HeadlessRunner {
+    public static final String SCHEDULER_OPTION = "-scheduler";
+    public static final String CLOSED_FORM_OPTION = "-closedform";
+    public static final String ENTITY_STORE_OPTION = "-entitystore";
+    public static final String PATHFINDING_OPTION = "-pathfinding";
+    public static final String FLOW_FIELDS_OPTION = "-flowfields";
+    public static final String REPORT_OPTION = "-report";
+    public static final String CHUNKED_OPTION = "-chunked";
+    public static final double DEFAULT_REPORT_INTERVAL = 10.0;
+
+    private final Simulation simulation;
+    private final WorldModel world;
+    private final EventScheduler scheduler;
+    private final PrintStream out;
+    private int peakQueueSize;
+
+    /**
+     * Creates a new HeadlessRunner.
+     * @param simulation The simulation to run.
+     * @param out Where to print the reports.
+     */
+    public HeadlessRunner(Simulation simulation, PrintStream out) {
+        this.simulation = simulation;
+        this.world = simulation.getWorld();
+        this.scheduler = simulation.getScheduler();
+        this.out = out;
+        this.peakQueueSize = this.scheduler.getQueueSize();
+    }
+
+    public int getPeakQueueSize() {
+        return this.peakQueueSize;
+    }
+
+    /**
+     * Advances the world by step until duration has passed, reporting every reportInterval.
+     * @param duration The simulated time (seconds) to run for.
+     * @param step The simulated time (seconds) of each update.
+     * @param reportInterval The simulated time (seconds) between reports.
+     */
+    public void run(double duration, double step, double reportInterval) {
+        if (duration <= 0 || step <= 0 || reportInterval <= 0) {
+            throw new IllegalArgumentException("HeadlessRunner requires a positive duration, step and report interval");
+        }
+        double nextReport = reportInterval;
+        long startNanos = System.nanoTime();
+
+        this.report();
+        while (this.scheduler.getCurrentTime() < duration) {
+            this.simulation.update(Math.min(step, duration - this.scheduler.getCurrentTime()));
+            this.peakQueueSize = Math.max(this.peakQueueSize, this.scheduler.getQueueSize());
+
+            if (this.scheduler.getCurrentTime() >= nextReport) {
+                this.report();
+                nextReport += reportInterval;
+            }
+        }
+
+        double wallSeconds = (System.nanoTime() - startNanos) * 1e-9;
+        this.out.printf("simulated %.1f s in %.3f s wall: %.1f sim-s/wall-s, %.0f events/s, %d events, peak queue depth %d%n",
+                this.scheduler.getCurrentTime(), wallSeconds, this.scheduler.getCurrentTime() / wallSeconds,
+                this.scheduler.getEventCount() / wallSeconds, this.scheduler.getEventCount(), this.peakQueueSize);
+    }
+
+    private void report() {
+        Map<EntityKind, Integer> counts = new EnumMap<>(EntityKind.class);
+        for (EntityKind kind : EntityKind.values()) {
+            counts.put(kind, this.world.count(kind.mask()));
+        }
+        this.out.printf("t=%.1f events=%d queue=%d entities=%d %s%n", this.scheduler.getCurrentTime(),
+                this.scheduler.getEventCount(), this.scheduler.getQueueSize(), this.world.getEntities().size(), counts);
+    }
+
+    /**
+     * @param name One of heap, wheel or primitive.
+     * @return A new scheduler of that kind.
+     */
+    public static EventScheduler createScheduler(String name) {
+        return switch (name) {
+            case "heap" -> new EventQueueScheduler();
+            case "wheel" -> new EventQueueScheduler(new TimingWheel());
+            case "primitive" -> new PrimitiveEventScheduler();
+            default -> throw new IllegalArgumentException("Scheduler is unknown: " + name);
+        };
+    }
+
+    /**
+     * @return An ImageStore with only the default image, for running without a window.
+     */
+    public static ImageStore createHeadlessImageStore() {
+        return new ImageStore(VirtualWorld.createImageColored(VirtualWorld.TILE_WIDTH, VirtualWorld.TILE_HEIGHT, VirtualWorld.DEFAULT_IMAGE_COLOR));
+    }
+
+    public static void main(String[] args) throws FileNotFoundException {
+        if (args.length < 4) {
+            System.err.println("usage: HeadlessRunner worldFile seed duration step [-scheduler heap|wheel|primitive] [-closedform] [-entitystore] [-pathfinding] [-flowfields] [-report seconds] [-chunked rows cols [evictionDir]]");
+            System.exit(2);
+        }
+        String worldFile = args[0];
+        long seed = Long.parseLong(args[1]);
+        double duration = Double.parseDouble(args[2]);
+        double step = Double.parseDouble(args[3]);
+        String schedulerName = "heap";
+        boolean closedForm = false;
+        boolean entityStore = false;
+        boolean pathfinding = false;
+        boolean flowFields = false;
+        double reportInterval = DEFAULT_REPORT_INTERVAL;
+        int chunkedRows = 0;
+        int chunkedCols = 0;
+        Path evictionDirectory = null;
+
+        for (int i = 4; i < args.length; i++) {
+            switch (args[i]) {
+                case SCHEDULER_OPTION -> schedulerName = VirtualWorld.optionValue(args, i++);
+                case CLOSED_FORM_OPTION -> closedForm = true;
+                case ENTITY_STORE_OPTION -> entityStore = true;
+                case PATHFINDING_OPTION -> pathfinding = true;
+                case FLOW_FIELDS_OPTION -> flowFields = true;
+                case REPORT_OPTION -> reportInterval = Double.parseDouble(VirtualWorld.optionValue(args, i++));
+                case CHUNKED_OPTION -> {
+                    chunkedRows = Integer.parseInt(VirtualWorld.optionValue(args, i++));
+                    chunkedCols = Integer.parseInt(VirtualWorld.optionValue(args, i++));
+                    if (i + 1 < args.length && !args[i + 1].startsWith("-")) {
+                        evictionDirectory = Path.of(args[++i]);
+                    }
+                }
+                default -> throw new IllegalArgumentException("Option is unknown: " + args[i]);
+            }
+        }
+
+        EventScheduler scheduler = createScheduler(schedulerName);
+        scheduler.setClosedFormAnimation(closedForm);
+        WorldModel world = new WorldModel(seed);
+        ImageStore imageStore = createHeadlessImageStore();
+        if (chunkedRows > 0) {
+            ChunkedWorldGrid.Generator generator = ChunkedWorldGrid.scatter(seed, List.of(VirtualWorld.createDefaultBackground(imageStore)));
+            world.useChunkedGrid(new ChunkedWorldGrid(chunkedRows, chunkedCols, ChunkedWorldGrid.DEFAULT_CHUNK_SIZE,
+                    ChunkedWorldGrid.DEFAULT_MAX_RESIDENT, generator, evictionDirectory));
+        }
+        if (entityStore) {
+            world.useEntityStore(new EntityStore());
+        }
+        if (pathfinding) {
+            world.usePathfinder(new Pathfinder());
+        }
+        world.useFlowFields(flowFields);
+        Simulation simulation = new Simulation(world, new Scanner(new File(worldFile)), scheduler, imageStore);
+
+        new HeadlessRunner(simulation, System.out).run(duration, step, reportInterval);
+    }
+}
@@ -12,4 +12,9 @@ public class House extends Entity {
     public House(String id, Point position, List<PImage> images) {
         super(id, position, images);
     }
+
+    @Override
+    public EntityKind getKind() {
+        return EntityKind.HOUSE;
+    }
 }
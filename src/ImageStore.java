@@ -8,6 +8,7 @@ import processing.core.PImage;
 public final class ImageStore {
     private final Map<String, List<PImage>> images;
     private final List<PImage> defaultImages;
+    private TextureAtlas atlas;
 
     public ImageStore(PImage defaultImage) {
         this.images = new HashMap<>();
@@ -22,4 +23,15 @@ public final class ImageStore {
     public Map<String, List<PImage>> getImages() {
         return this.images;
     }
+
+    /**
+     * @return The atlas holding this store's frames, or null if they are separate images.
+     */
+    public TextureAtlas getAtlas() {
+        return this.atlas;
+    }
+
+    public void setAtlas(TextureAtlas atlas) {
+        this.atlas = atlas;
+    }
 }
@@ -0,0 +1,183 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import processing.core.PApplet;
+
+/**
+ * Measures where each frame's time goes: how long the update and the draw took, how many
+ * events of each ActionKind the update executed, how deep the event queue is, and how
+ * many entities of each kind there are. Each measurement keeps its recent samples in a
+ * RollingStats, so the overlay and the report can show rolling p50 and p99 values, and
+ * dumpSamples can print the samples themselves.
+ *
+ * Measuring is on while the overlay is shown or a profile is being taken, and off
+ * otherwise. Nothing is measured until the instrumentation is enabled; callers check isEnabled before
+ * reading the clock, so when it is off a frame pays for one volatile read. Updates and draws
+ * may be recorded on different threads, as they are with a SimulationThread, but each kind
+ * of record must always come from the same thread.
+ */
+public final class Instrumentation {
+    private static final ActionKind[] ACTION_KINDS = ActionKind.values();
+    private static final EntityKind[] ENTITY_KINDS = EntityKind.values();
+    private static final int OVERLAY_LINE_HEIGHT = 14;
+
+    private final RollingStats updateNanos;
+    private final RollingStats drawNanos;
+    private final RollingStats queueDepths;
+    private final RollingStats[] eventsPerFrame;
+    private final long[] lastEventCounts;
+    private final AtomicIntegerArray entityCounts;
+    private volatile boolean enabled;
+    private volatile boolean overlayVisible;
+    private volatile boolean profiling;
+    private volatile boolean resync;
+    private volatile long pixelsRedrawn;
+
+    public Instrumentation() {
+        this.updateNanos = new RollingStats();
+        this.drawNanos = new RollingStats();
+        this.queueDepths = new RollingStats();
+        this.eventsPerFrame = new RollingStats[ACTION_KINDS.length];
+        for (int i = 0; i < ACTION_KINDS.length; i++) {
+            this.eventsPerFrame[i] = new RollingStats();
+        }
+        this.lastEventCounts = new long[ACTION_KINDS.length];
+        this.entityCounts = new AtomicIntegerArray(ENTITY_KINDS.length);
+    }
+
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        if (enabled && !this.enabled) {
+            this.resync = true;
+        }
+        this.enabled = enabled;
+    }
+
+    public boolean isOverlayVisible() {
+        return this.overlayVisible;
+    }
+
+    /**
+     * Shows or hides the overlay. Showing it turns measuring on, and hiding it turns measuring
+     * off unless a profile is being taken.
+     */
+    public void toggleOverlay() {
+        this.overlayVisible = !this.overlayVisible;
+        this.setEnabled(this.overlayVisible || this.profiling);
+    }
+
+    public boolean isProfiling() {
+        return this.profiling;
+    }
+
+    /**
+     * Starts or stops taking a profile. Measuring is on while a profile is being taken, and
+     * stays on afterwards only if the overlay is shown.
+     * @return Whether a profile is now being taken.
+     */
+    public boolean toggleProfiling() {
+        this.profiling = !this.profiling;
+        this.setEnabled(this.overlayVisible || this.profiling);
+        return this.profiling;
+    }
+
+    /**
+     * Records one update. Call it from the thread that runs the scheduler, right after the update.
+     * @param nanos The time (nanoseconds) the update took.
+     * @param scheduler The scheduler that ran the update.
+     * @param world The game world.
+     */
+    public void recordUpdate(long nanos, EventScheduler scheduler, WorldModel world) {
+        this.updateNanos.record(nanos);
+        this.queueDepths.record(scheduler.getQueueSize());
+
+        boolean resync = this.resync;
+        for (int i = 0; i < ACTION_KINDS.length; i++) {
+            long count = scheduler.getEventCount(ACTION_KINDS[i]);
+            if (!resync) {
+                this.eventsPerFrame[i].record(count - this.lastEventCounts[i]);
+            }
+            this.lastEventCounts[i] = count;
+        }
+        this.resync = false;
+
+        for (int i = 0; i < ENTITY_KINDS.length; i++) {
+            this.entityCounts.set(i, world.count(ENTITY_KINDS[i].mask()));
+        }
+    }
+
+    /**
+     * Records one draw.
+     * @param nanos The time (nanoseconds) the draw took.
+     * @param pixelsRedrawn The number of pixels the view redrew.
+     */
+    public void recordDraw(long nanos, long pixelsRedrawn) {
+        this.drawNanos.record(nanos);
+        this.pixelsRedrawn = pixelsRedrawn;
+    }
+
+    /**
+     * @return The current measurements, one line per measurement.
+     */
+    public List<String> report() {
+        List<String> lines = new ArrayList<>();
+        lines.add(String.format("update ms: p50 %.3f p99 %.3f", this.updateNanos.percentile(0.5) * 1e-6, this.updateNanos.percentile(0.99) * 1e-6));
+        lines.add(String.format("draw ms: p50 %.3f p99 %.3f", this.drawNanos.percentile(0.5) * 1e-6, this.drawNanos.percentile(0.99) * 1e-6));
+        StringBuilder events = new StringBuilder("events/frame:");
+        for (int i = 0; i < ACTION_KINDS.length; i++) {
+            events.append(String.format(" %s p50 %d p99 %d", ACTION_KINDS[i], this.eventsPerFrame[i].percentile(0.5), this.eventsPerFrame[i].percentile(0.99)));
+        }
+        lines.add(events.toString());
+        lines.add(String.format("queue depth: %d p99 %d", this.queueDepths.getLatest(), this.queueDepths.percentile(0.99)));
+        lines.add(String.format("pixels redrawn: %d", this.pixelsRedrawn));
+        StringBuilder entities = new StringBuilder("entities:");
+        for (int i = 0; i < ENTITY_KINDS.length; i++) {
+            entities.append(' ').append(ENTITY_KINDS[i]).append('=').append(this.entityCounts.get(i));
+        }
+        lines.add(entities.toString());
+        return lines;
+    }
+
+    /**
+     * @return The kept samples of every measurement, oldest first, one line per measurement.
+     */
+    public List<String> dumpSamples() {
+        List<String> lines = new ArrayList<>();
+        lines.add(samplesLine("update ns:", this.updateNanos));
+        lines.add(samplesLine("draw ns:", this.drawNanos));
+        lines.add(samplesLine("queue depth:", this.queueDepths));
+        for (int i = 0; i < ACTION_KINDS.length; i++) {
+            lines.add(samplesLine(ACTION_KINDS[i] + " events/frame:", this.eventsPerFrame[i]));
+        }
+        return lines;
+    }
+
+    private static String samplesLine(String name, RollingStats stats) {
+        StringBuilder line = new StringBuilder(name);
+        for (long sample : stats.getSamples()) {
+            line.append(' ').append(sample);
+        }
+        return line.toString();
+    }
+
+    /**
+     * Draws the report over the top left of the screen.
+     */
+    public void drawOverlay(PApplet screen) {
+        List<String> lines = this.report();
+        screen.pushStyle();
+        screen.noStroke();
+        screen.fill(0, 160);
+        screen.rect(0, 0, screen.width, lines.size() * OVERLAY_LINE_HEIGHT + 6);
+        screen.fill(255);
+        screen.textSize(11);
+        for (int i = 0; i < lines.size(); i++) {
+            screen.text(lines.get(i), 4, (i + 1) * OVERLAY_LINE_HEIGHT);
+        }
+        screen.popStyle();
+    }
+}
@@ -0,0 +1,207 @@
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import processing.core.PApplet;
+import processing.core.PImage;
+
+/**
+ * A summary of the world at every power-of-two block size, for drawing the world zoomed
+ * out. Level k splits the grid into blocks of 2^k by 2^k cells, and for each block keeps
+ * the summed colour of its backgrounds and the number of its occupants of each kind. So
+ * the colour of any block at any level is a couple of array reads, and a zoomed out
+ * frame costs one read per pixel however many cells it covers.
+ *
+ * A background's colour is the average of its image's opaque pixels. A block with
+ * occupants is tinted toward the colour of its most common kind, more strongly the more
+ * crowded it is. The world calls remove before a cell changes and add after, and each
+ * call updates one block per level.
+ *
+ * The levels cover the whole grid, so they need a world with a FlatWorldGrid.
+ */
+public final class LevelOfDetail {
+    private static final int[] KIND_COLORS = new int[EntityKind.COUNT];
+
+    static {
+        KIND_COLORS[EntityKind.HOUSE.ordinal()] = 0xb5651d;
+        KIND_COLORS[EntityKind.DUDE_FULL.ordinal()] = 0xffd700;
+        KIND_COLORS[EntityKind.DUDE_NOT_FULL.ordinal()] = 0xffa500;
+        KIND_COLORS[EntityKind.OBSTACLE.ordinal()] = 0x1e64c8;
+        KIND_COLORS[EntityKind.FAIRY.ordinal()] = 0xff69b4;
+        KIND_COLORS[EntityKind.STUMP.ordinal()] = 0x5c4033;
+        KIND_COLORS[EntityKind.TREE.ordinal()] = 0x145a14;
+        KIND_COLORS[EntityKind.SAPLING.ordinal()] = 0x78c850;
+    }
+
+    private final WorldModel world;
+    private final WorldGrid grid;
+    private final int rows;
+    private final int cols;
+    private final int levelCount;
+    // per level from 1, per block: red, green and blue sums, then occupant counts by kind
+    private final int[][] colorSums;
+    private final int[][] kindCounts;
+    private final int[] blockCols;
+    private final Map<PImage, Integer> imageColors;
+
+    /**
+     * Creates a new LevelOfDetail and summarises the whole world.
+     * @param world The game world.
+     */
+    public LevelOfDetail(WorldModel world) {
+        if (!(world.getGrid() instanceof FlatWorldGrid)) {
+            throw new UnsupportedOperationException("Levels of detail need a FlatWorldGrid");
+        }
+        this.world = world;
+        this.grid = world.getGrid();
+        this.rows = world.getRows();
+        this.cols = world.getCols();
+
+        int levels = 1;
+        while ((1 << (levels - 1)) < Math.max(this.rows, this.cols)) {
+            levels++;
+        }
+        this.levelCount = levels;
+        this.colorSums = new int[levels][];
+        this.kindCounts = new int[levels][];
+        this.blockCols = new int[levels];
+        for (int level = 1; level < levels; level++) {
+            int size = 1 << level;
+            this.blockCols[level] = (this.cols + size - 1) / size;
+            int blocks = this.blockCols[level] * ((this.rows + size - 1) / size);
+            this.colorSums[level] = new int[blocks * 3];
+            this.kindCounts[level] = new int[blocks * EntityKind.COUNT];
+        }
+        this.imageColors = new IdentityHashMap<>();
+
+        for (int y = 0; y < this.rows; y++) {
+            for (int x = 0; x < this.cols; x++) {
+                this.add(x, y);
+            }
+        }
+    }
+
+    /**
+     * @return The number of levels, the last of which is one block covering the world.
+     */
+    public int getLevelCount() {
+        return this.levelCount;
+    }
+
+    /**
+     * Takes a cell's background and occupant out of the summary, before they change.
+     */
+    public void remove(int x, int y) {
+        this.update(x, y, -1);
+    }
+
+    /**
+     * Puts a cell's background and occupant into the summary, after they have changed.
+     */
+    public void add(int x, int y) {
+        this.update(x, y, 1);
+    }
+
+    private void update(int x, int y, int sign) {
+        int color = this.backgroundColor(x, y);
+        Entity occupant = this.grid.getOccupant(x, y);
+        for (int level = 1; level < this.levelCount; level++) {
+            int block = (y >> level) * this.blockCols[level] + (x >> level);
+            int[] sums = this.colorSums[level];
+            sums[block * 3] += sign * ((color >> 16) & 0xff);
+            sums[block * 3 + 1] += sign * ((color >> 8) & 0xff);
+            sums[block * 3 + 2] += sign * (color & 0xff);
+            if (occupant != null) {
+                this.kindCounts[level][block * EntityKind.COUNT + occupant.getKind().ordinal()] += sign;
+            }
+        }
+    }
+
+    /**
+     * @return The colour (RGB) to show for the block at (blockX, blockY) of a level.
+     */
+    public int getColor(int level, int blockX, int blockY) {
+        int size = 1 << level;
+        if (blockX < 0 || blockY < 0 || blockX * size >= this.cols || blockY * size >= this.rows) {
+            return 0;
+        }
+        if (level == 0) {
+            Entity occupant = this.grid.getOccupant(blockX, blockY);
+            int background = this.backgroundColor(blockX, blockY);
+            return occupant == null ? background : blend(background, KIND_COLORS[occupant.getKind().ordinal()], 0.75);
+        }
+
+        int block = blockY * this.blockCols[level] + blockX;
+        int cells = (Math.min(this.cols, (blockX + 1) * size) - blockX * size) * (Math.min(this.rows, (blockY + 1) * size) - blockY * size);
+        int[] sums = this.colorSums[level];
+        int background = (sums[block * 3] / cells) << 16 | (sums[block * 3 + 1] / cells) << 8 | (sums[block * 3 + 2] / cells);
+
+        int[] counts = this.kindCounts[level];
+        int total = 0;
+        int dominant = 0;
+        for (int kind = 0; kind < EntityKind.COUNT; kind++) {
+            int count = counts[block * EntityKind.COUNT + kind];
+            total += count;
+            if (count > counts[block * EntityKind.COUNT + dominant]) {
+                dominant = kind;
+            }
+        }
+        if (total == 0) {
+            return background;
+        }
+        return blend(background, KIND_COLORS[dominant], 0.4 + 0.6 * total / cells);
+    }
+
+    /**
+     * Fills an image with one pixel per block of a level, starting from a block.
+     * @param image The image to fill.
+     * @param level The level to read.
+     * @param firstBlockX The block shown in the image's left column.
+     * @param firstBlockY The block shown in the image's top row.
+     */
+    public void render(PImage image, int level, int firstBlockX, int firstBlockY) {
+        image.loadPixels();
+        for (int row = 0; row < image.height; row++) {
+            for (int col = 0; col < image.width; col++) {
+                image.pixels[row * image.width + col] = 0xff000000 | this.getColor(level, firstBlockX + col, firstBlockY + row);
+            }
+        }
+        image.updatePixels();
+    }
+
+    private int backgroundColor(int x, int y) {
+        Background background = this.grid.getPaletteBackground(this.grid.getBackgroundIndex(x, y));
+        return background == null ? 0 : this.imageColor(background.getCurrentImage());
+    }
+
+    // the average colour of an image's opaque pixels
+    private int imageColor(PImage image) {
+        Integer known = this.imageColors.get(image);
+        if (known != null) {
+            return known;
+        }
+        image.loadPixels();
+        long red = 0;
+        long green = 0;
+        long blue = 0;
+        long count = 0;
+        for (int pixel : image.pixels) {
+            if (image.format != PApplet.ARGB || (pixel >>> 24) != 0) {
+                red += (pixel >> 16) & 0xff;
+                green += (pixel >> 8) & 0xff;
+                blue += pixel & 0xff;
+                count++;
+            }
+        }
+        int color = count == 0 ? 0 : (int) (red / count) << 16 | (int) (green / count) << 8 | (int) (blue / count);
+        this.imageColors.put(image, color);
+        return color;
+    }
+
+    private static int blend(int from, int to, double amount) {
+        amount = Math.min(1.0, amount);
+        int red = (int) (((from >> 16) & 0xff) * (1 - amount) + ((to >> 16) & 0xff) * amount);
+        int green = (int) (((from >> 8) & 0xff) * (1 - amount) + ((to >> 8) & 0xff) * amount);
+        int blue = (int) ((from & 0xff) * (1 - amount) + (to & 0xff) * amount);
+        return red << 16 | green << 8 | blue;
+    }
+}
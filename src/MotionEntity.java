@@ -3,6 +3,11 @@ import processing.core.PImage;
 import java.util.List;
 
 public abstract class MotionEntity extends ActivityEntity{
+    private long[] path;
+    private int pathStep;
+    private long pathOrigin;
+    private long pathDestination;
+    private boolean pathStale = true;
 
     /**
      * Creates a new MotionEntity.
@@ -19,8 +24,105 @@ public abstract class MotionEntity extends ActivityEntity{
     //implemented in the Fairy, DudeFull, and DudeNotFull classes
     public abstract boolean moveTo(WorldModel world, Entity target, EventScheduler scheduler);
 
+    /**
+     * Works out the next step toward a destination.
+     * @param world   The game world.
+     * @param destPos The location to move toward.
+     * @return The cell to move to, which is this entity's own position if it cannot move.
+     */
+    public Point nextPosition(WorldModel world, Point destPos) {
+        Point position = this.getPosition();
+        Pathfinder pathfinder = world.getPathfinder();
+        long next;
+        if (world.isUsingFlowFields()) {
+            next = world.getFlowField(this.getTargetKinds(), this.getPassableKinds()).nextPackedPosition(this);
+        } else if (pathfinder != null) {
+            next = this.nextPathPosition(world, pathfinder, destPos.x, destPos.y);
+        } else {
+            next = this.nextPackedPosition(world, destPos.x, destPos.y);
+        }
+        return next == position.pack() ? position : world.pointAt(next);
+    }
+
     //implemented in the Fairy and Dude classes
-    public abstract Point nextPosition(WorldModel world, Point destPos);
+    public abstract long nextPackedPosition(WorldModel world, int destX, int destY);
+
+    /**
+     * @return The kinds of entity this entity heads for, as an EntityKind mask.
+     */
+    public abstract int getTargetKinds();
 
+    /**
+     * @return The kinds of entity this entity can walk over, as an EntityKind mask.
+     */
+    public int getPassableKinds() {
+        return 0;
+    }
+
+    /**
+     * Whether this entity could step into a cell. Dudes override this to walk over Stumps.
+     * @param world The game world.
+     * @param x The column of the cell.
+     * @param y The row of the cell.
+     */
+    public boolean canEnter(WorldModel world, int x, int y) {
+        return world.withinBounds(x, y) && !world.isOccupied(x, y);
+    }
+
+    /**
+     * Works out the next step along a shortest path to the destination. The path is kept
+     * between steps and only planned again when the destination moves, this entity has
+     * left the path, or the Pathfinder has said a cell still ahead on it can no longer be
+     * entered. A failed search is kept too, until the Pathfinder says something it looked
+     * at has changed.
+     * @return The packed cell to move to, which is this entity's own position if there is no path.
+     */
+    private long nextPathPosition(WorldModel world, Pathfinder pathfinder, int destX, int destY) {
+        long position = this.getPosition().pack();
+        long destination = Point.pack(destX, destY);
+
+        if (this.path != null && this.pathStep < this.path.length && this.path[this.pathStep] == position) {
+            this.pathStep++; // the last step we handed out was taken
+        }
+        long previous = this.path == null || this.pathStep == 0 ? this.pathOrigin : this.path[this.pathStep - 1];
+        if (this.pathStale || this.pathDestination != destination || previous != position) {
+            this.path = pathfinder.findPath(world, this, destX, destY);
+            this.pathStep = 0;
+            this.pathOrigin = position;
+            this.pathDestination = destination;
+            this.pathStale = false;
+        }
+        return this.path != null && this.pathStep < this.path.length ? this.path[this.pathStep] : position;
+    }
+
+    /**
+     * Told by the Pathfinder that the occupant of a cell on this entity's path has changed.
+     * @return Whether this entity still needs to hear about the cell.
+     */
+    public boolean pathCellChanged(WorldModel world, int x, int y) {
+        if (this.path == null || this.pathStale) {
+            return false;
+        }
+        long cell = Point.pack(x, y);
+        for (int step = this.pathStep; step < this.path.length; step++) {
+            if (this.path[step] == cell) {
+                if (world.getOccupancyCell(x, y) != this && !this.canEnter(world, x, y)) {
+                    this.pathStale = true;
+                    return false;
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Told by the Pathfinder that something changed where this entity's last search looked.
+     */
+    public void searchAreaChanged() {
+        if (this.path == null) {
+            this.pathStale = true;
+        }
+    }
 
 }
@@ -13,4 +13,9 @@ public class Obstacle extends AnimationEntity{
     public Obstacle(String id, Point position, double animationPeriod, List<PImage> images) {
         super(id, position, images, animationPeriod);
     }
+
+    @Override
+    public EntityKind getKind() {
+        return EntityKind.OBSTACLE;
+    }
 }
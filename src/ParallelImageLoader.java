@@ -0,0 +1,115 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import processing.core.PApplet;
+import processing.core.PImage;
+
+/**
+ * Loads the images on an image list on a pool of threads, instead of one after another.
+ *
+ * Every line's file is decoded, and colour-keyed if the line gives a colour, as its own
+ * task. The lines are read and their colours worked out first, on the calling thread,
+ * since the sketch's color() is not safe to call from several threads. The decoded frames
+ * are added to the ImageStore in list order afterwards, so each key's frames end up in the
+ * same order as with WorldModel.loadImages, and so does the handling of malformed lines.
+ */
+public final class ParallelImageLoader {
+    private ParallelImageLoader() {
+    }
+
+    /**
+     * Loads every image on the list into the store.
+     * @param in The image list.
+     * @param imageStore The store to add the images to.
+     * @param screen Loads the image files.
+     * @param pool The threads to decode images on.
+     */
+    public static void loadImages(Scanner in, ImageStore imageStore, PApplet screen, ForkJoinPool pool) {
+        List<String> keys = new ArrayList<>();
+        List<Future<PImage>> frames = new ArrayList<>();
+        List<Integer> formatErrors = new ArrayList<>();
+        int lineNumber = 0;
+        while (in.hasNextLine()) {
+            String[] attrs = in.nextLine().split("\\s");
+            if (attrs.length >= 2) {
+                boolean keyed = false;
+                int maskColor = 0;
+                int formatError = -1;
+                if (attrs.length >= WorldModel.KEYED_IMAGE_MIN) {
+                    try {
+                        int r = Integer.parseInt(attrs[WorldModel.KEYED_RED_IDX]);
+                        int g = Integer.parseInt(attrs[WorldModel.KEYED_GREEN_IDX]);
+                        int b = Integer.parseInt(attrs[WorldModel.KEYED_BLUE_IDX]);
+                        maskColor = screen.color(r, g, b);
+                        keyed = true;
+                    } catch (NumberFormatException e) {
+                        // like loadImages, keep the image but leave it unkeyed
+                        formatError = lineNumber;
+                    }
+                }
+
+                String file = attrs[1];
+                boolean keyedImage = keyed;
+                int keyColor = maskColor;
+                keys.add(attrs[0]);
+                formatErrors.add(formatError);
+                frames.add(pool.submit(() -> loadImage(screen, file, keyedImage, keyColor)));
+            }
+            lineNumber++;
+        }
+
+        for (int i = 0; i < frames.size(); i++) {
+            PImage img;
+            try {
+                img = frames.get(i).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while loading images", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Could not load an image", e.getCause());
+            }
+            if (img != null) {
+                WorldModel.getImages(imageStore.getImages(), keys.get(i)).add(img);
+                // loadImages only reads the colour of an image that loaded
+                if (formatErrors.get(i) >= 0) {
+                    System.out.printf("Image format error on line %d\n", formatErrors.get(i));
+                }
+            }
+        }
+    }
+
+    private static PImage loadImage(PApplet screen, String file, boolean keyed, int maskColor) {
+        PImage img = screen.loadImage(file);
+        if (img == null || img.width == -1) {
+            return null;
+        }
+        if (keyed) {
+            img.format = PApplet.ARGB;
+            img.loadPixels();
+            keyColor(img.pixels, maskColor, 0);
+            img.updatePixels();
+        }
+        return img;
+    }
+
+    /**
+     * Gives every pixel of one colour a new alpha, ignoring the pixels' current alpha.
+     * The loop body is a compare and a select with no branches, which the JIT turns into
+     * vector instructions.
+     * @param pixels The pixels to change.
+     * @param maskColor The colour to change.
+     * @param alpha The alpha (0 to 255) to give that colour.
+     */
+    public static void keyColor(int[] pixels, int maskColor, int alpha) {
+        int nonAlpha = maskColor & WorldModel.COLOR_MASK;
+        int keyed = (alpha << 24) | nonAlpha;
+        for (int i = 0; i < pixels.length; i++) {
+            int pixel = pixels[i];
+            pixels[i] = (pixel & WorldModel.COLOR_MASK) == nonAlpha ? keyed : pixel;
+        }
+    }
+}
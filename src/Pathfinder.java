@@ -0,0 +1,355 @@
+import java.util.*;
+
+/**
+ * Finds shortest paths for MotionEntities over the world's 4-connected grid, using A*
+ * with jump point search.
+ *
+ * Jump point search only puts a cell in the open set where a path could usefully turn: a
+ * horizontal run only stops beside an obstacle corner (a "forced" neighbour), and a
+ * vertical run stops wherever a horizontal run from it would find something. Every path
+ * it builds is a shortest one, but open areas cost a few straight scans instead of one
+ * open-set entry per cell.
+ *
+ * The goal is any cell next to the target, since that is where moveTo acts. Which cells a
+ * mover can enter is up to MotionEntity.canEnter (Dudes can walk over Stumps). A search
+ * only looks inside the box around the start and target widened by margin cells, and
+ * gives up after maxExpansions jump points, so a hopeless search in a huge world stays
+ * cheap.
+ *
+ * A WorldModel using this pathfinder tells it about every occupancy change, and it passes
+ * them on, so movers never have to check their paths themselves:
+ * - a mover with a path hears about changes to the cells along it, and plans again only
+ *      when one it has yet to reach can no longer be entered;
+ * - a mover whose search failed hears about any change in the blocks of cells its search
+ *      looked at, and does not search again until then.
+ * A mover's registrations are dropped when it searches again and when forget is called,
+ * which WorldModel does as the mover leaves the world.
+ */
+public final class Pathfinder {
+    public static final int DEFAULT_MARGIN = 16;
+    public static final int DEFAULT_MAX_EXPANSIONS = 4096;
+    private static final long NONE = Long.MIN_VALUE;
+    private static final int BLOCK_SHIFT = 3;
+
+    private final int margin;
+    private final int maxExpansions;
+    // movers following a path, by each packed cell along it
+    private final Map<Long, Set<MotionEntity>> pathWatchers;
+    // movers whose search failed, by each packed 8x8 block its search looked at
+    private final Map<Long, Set<MotionEntity>> failureWatchers;
+    // the keys each mover is registered under, so they can be dropped again
+    private final Map<MotionEntity, long[]> watchedCells;
+    private final Map<MotionEntity, long[]> watchedBlocks;
+    private long searchCount;
+
+    // the search in progress
+    private WorldModel world;
+    private MotionEntity mover;
+    private int targetX;
+    private int targetY;
+    private int minX;
+    private int maxX;
+    private int minY;
+    private int maxY;
+
+    public Pathfinder() {
+        this(DEFAULT_MARGIN, DEFAULT_MAX_EXPANSIONS);
+    }
+
+    /**
+     * Creates a new Pathfinder.
+     * @param margin How far (cells) outside the box around start and target to search.
+     * @param maxExpansions The number of jump points to expand before giving up.
+     */
+    public Pathfinder(int margin, int maxExpansions) {
+        if (margin < 0 || maxExpansions <= 0) {
+            throw new IllegalArgumentException("Pathfinder requires a non-negative margin and a positive expansion limit");
+        }
+        this.margin = margin;
+        this.maxExpansions = maxExpansions;
+        this.pathWatchers = new HashMap<>();
+        this.failureWatchers = new HashMap<>();
+        this.watchedCells = new HashMap<>();
+        this.watchedBlocks = new HashMap<>();
+    }
+
+    /**
+     * @return The number of searches run so far.
+     */
+    public long getSearchCount() {
+        return this.searchCount;
+    }
+
+    /**
+     * @return The number of movers registered for changes.
+     */
+    public int getWatchedCount() {
+        return this.watchedCells.size() + this.watchedBlocks.size();
+    }
+
+    /**
+     * Finds a shortest path from the mover's position to a cell next to the target. The
+     * mover is then told about changes to the cells along the path, or, if there is no path,
+     * about any change that might open one up, instead of whatever it was told about before.
+     * @param world The game world.
+     * @param mover The entity that will follow the path.
+     * @param targetX The column of the target.
+     * @param targetY The row of the target.
+     * @return The packed cells of the path, not including the start, or null if there is none.
+     */
+    public long[] findPath(WorldModel world, MotionEntity mover, int targetX, int targetY) {
+        Point start = mover.getPosition();
+        this.world = world;
+        this.mover = mover;
+        this.targetX = targetX;
+        this.targetY = targetY;
+        this.minX = Math.min(start.x, targetX) - this.margin;
+        this.maxX = Math.max(start.x, targetX) + this.margin;
+        this.minY = Math.min(start.y, targetY) - this.margin;
+        this.maxY = Math.max(start.y, targetY) + this.margin;
+        this.searchCount++;
+        this.forget(mover);
+        try {
+            long[] path = this.search(start.x, start.y);
+            if (path != null) {
+                for (long cell : path) {
+                    watch(this.pathWatchers, cell, mover);
+                }
+                this.watchedCells.put(mover, path);
+            } else {
+                this.watchSearchedBlocks();
+            }
+            return path;
+        } finally {
+            this.world = null;
+            this.mover = null;
+        }
+    }
+
+    /**
+     * Stops telling the mover about any changes.
+     */
+    public void forget(MotionEntity mover) {
+        long[] cells = this.watchedCells.remove(mover);
+        if (cells != null) {
+            for (long cell : cells) {
+                unwatch(this.pathWatchers, cell, mover);
+            }
+        }
+        long[] blocks = this.watchedBlocks.remove(mover);
+        if (blocks != null) {
+            for (long block : blocks) {
+                unwatch(this.failureWatchers, block, mover);
+            }
+        }
+    }
+
+    /**
+     * Passes on a change to the occupant of a cell to the movers that care about it.
+     * @param world The game world.
+     * @param x The column of the cell.
+     * @param y The row of the cell.
+     */
+    public void cellChanged(WorldModel world, int x, int y) {
+        Set<MotionEntity> failed = this.failureWatchers.remove(Point.pack(x >> BLOCK_SHIFT, y >> BLOCK_SHIFT));
+        if (failed != null) {
+            for (MotionEntity mover : failed) {
+                mover.searchAreaChanged();
+            }
+        }
+
+        long cell = Point.pack(x, y);
+        Set<MotionEntity> movers = this.pathWatchers.get(cell);
+        if (movers != null) {
+            movers.removeIf(mover -> !mover.pathCellChanged(world, x, y));
+            if (movers.isEmpty()) {
+                this.pathWatchers.remove(cell);
+            }
+        }
+    }
+
+    private static void watch(Map<Long, Set<MotionEntity>> watchers, long key, MotionEntity mover) {
+        watchers.computeIfAbsent(key, k -> new LinkedHashSet<>()).add(mover);
+    }
+
+    private static void unwatch(Map<Long, Set<MotionEntity>> watchers, long key, MotionEntity mover) {
+        Set<MotionEntity> movers = watchers.get(key);
+        if (movers != null && movers.remove(mover) && movers.isEmpty()) {
+            watchers.remove(key);
+        }
+    }
+
+    private void watchSearchedBlocks() {
+        int fromX = Math.max(this.minX, 0) >> BLOCK_SHIFT;
+        int toX = Math.min(this.maxX, this.world.getCols() - 1) >> BLOCK_SHIFT;
+        int fromY = Math.max(this.minY, 0) >> BLOCK_SHIFT;
+        int toY = Math.min(this.maxY, this.world.getRows() - 1) >> BLOCK_SHIFT;
+        long[] blocks = new long[Math.max(0, (toX - fromX + 1) * (toY - fromY + 1))];
+        int count = 0;
+        for (int blockY = fromY; blockY <= toY; blockY++) {
+            for (int blockX = fromX; blockX <= toX; blockX++) {
+                blocks[count] = Point.pack(blockX, blockY);
+                watch(this.failureWatchers, blocks[count++], this.mover);
+            }
+        }
+        this.watchedBlocks.put(this.mover, blocks);
+    }
+
+    private long[] search(int startX, int startY) {
+        if (this.isGoal(startX, startY)) {
+            return new long[0];
+        }
+
+        Map<Long, Node> nodes = new HashMap<>();
+        PriorityQueue<Node> open = new PriorityQueue<>();
+        long sequence = 0;
+
+        Node start = new Node(Point.pack(startX, startY), null, 0, this.heuristic(startX, startY), sequence++);
+        nodes.put(start.cell, start);
+        open.add(start);
+
+        int expansions = 0;
+        while (!open.isEmpty() && expansions < this.maxExpansions) {
+            Node node = open.poll();
+            if (node.closed) {
+                continue;
+            }
+            node.closed = true;
+            expansions++;
+
+            int x = Point.unpackX(node.cell);
+            int y = Point.unpackY(node.cell);
+            if (this.isGoal(x, y)) {
+                return this.expand(node);
+            }
+
+            for (long successor : this.successors(node, x, y)) {
+                if (successor == NONE) {
+                    continue;
+                }
+                int sx = Point.unpackX(successor);
+                int sy = Point.unpackY(successor);
+                int g = node.g + Math.abs(sx - x) + Math.abs(sy - y);
+                Node known = nodes.get(successor);
+                if (known == null || (!known.closed && g < known.g)) {
+                    Node next = new Node(successor, node, g, this.heuristic(sx, sy), sequence++);
+                    nodes.put(successor, next);
+                    open.add(next);
+                    if (known != null) {
+                        known.closed = true;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The jump points reachable from a node. A run that arrived horizontally keeps going
+     * and only turns at forced neighbours; one that arrived vertically may turn either way.
+     */
+    private long[] successors(Node node, int x, int y) {
+        if (node.parent == null) {
+            return new long[]{this.jumpHorizontal(x, y, 1), this.jumpHorizontal(x, y, -1),
+                    this.jumpVertical(x, y, 1), this.jumpVertical(x, y, -1)};
+        }
+        int dx = Integer.signum(x - Point.unpackX(node.parent.cell));
+        int dy = Integer.signum(y - Point.unpackY(node.parent.cell));
+        if (dx != 0) {
+            return new long[]{this.jumpHorizontal(x, y, dx),
+                    this.forced(x, y, dx, 1) ? this.jumpVertical(x, y, 1) : NONE,
+                    this.forced(x, y, dx, -1) ? this.jumpVertical(x, y, -1) : NONE};
+        }
+        return new long[]{this.jumpVertical(x, y, dy), this.jumpHorizontal(x, y, 1), this.jumpHorizontal(x, y, -1)};
+    }
+
+    // whether a horizontal run through (x, y) in direction dx has to consider turning to dy
+    private boolean forced(int x, int y, int dx, int dy) {
+        return this.canEnter(x, y + dy) && !this.canEnter(x - dx, y + dy);
+    }
+
+    private long jumpHorizontal(int x, int y, int dx) {
+        while (true) {
+            x += dx;
+            if (!this.canEnter(x, y)) {
+                return NONE;
+            }
+            if (this.isGoal(x, y) || this.forced(x, y, dx, 1) || this.forced(x, y, dx, -1)) {
+                return Point.pack(x, y);
+            }
+        }
+    }
+
+    private long jumpVertical(int x, int y, int dy) {
+        while (true) {
+            y += dy;
+            if (!this.canEnter(x, y)) {
+                return NONE;
+            }
+            if (this.isGoal(x, y) || this.jumpHorizontal(x, y, 1) != NONE || this.jumpHorizontal(x, y, -1) != NONE) {
+                return Point.pack(x, y);
+            }
+        }
+    }
+
+    private boolean canEnter(int x, int y) {
+        return x >= this.minX && x <= this.maxX && y >= this.minY && y <= this.maxY && this.mover.canEnter(this.world, x, y);
+    }
+
+    private boolean isGoal(int x, int y) {
+        return Math.abs(x - this.targetX) + Math.abs(y - this.targetY) == 1;
+    }
+
+    private int heuristic(int x, int y) {
+        return Math.max(0, Math.abs(x - this.targetX) + Math.abs(y - this.targetY) - 1);
+    }
+
+    /**
+     * Turns the chain of jump points ending at goal into every cell along the way.
+     */
+    private long[] expand(Node goal) {
+        long[] path = new long[goal.g];
+        int index = path.length;
+        for (Node node = goal; node.parent != null; node = node.parent) {
+            int x = Point.unpackX(node.cell);
+            int y = Point.unpackY(node.cell);
+            int px = Point.unpackX(node.parent.cell);
+            int py = Point.unpackY(node.parent.cell);
+            int dx = Integer.signum(px - x);
+            int dy = Integer.signum(py - y);
+            while (x != px || y != py) {
+                path[--index] = Point.pack(x, y);
+                x += dx;
+                y += dy;
+            }
+        }
+        return path;
+    }
+
+    private static final class Node implements Comparable<Node> {
+        private final long cell;
+        private final Node parent;
+        private final int g;
+        private final int h;
+        private final long sequence;
+        private boolean closed;
+
+        private Node(long cell, Node parent, int g, int h, long sequence) {
+            this.cell = cell;
+            this.parent = parent;
+            this.g = g;
+            this.h = h;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Node other) {
+            int byF = Integer.compare(this.g + this.h, other.g + other.h);
+            if (byF != 0) {
+                return byF;
+            }
+            int byH = Integer.compare(this.h, other.h);
+            return byH != 0 ? byH : Long.compare(this.sequence, other.sequence);
+        }
+    }
+}
@@ -4,7 +4,7 @@ import java.util.List;
 
 
 public abstract class PlantEntity extends ActivityEntity implements HealthEntity{
-    protected int health;
+    private int health;
 
     /**
      * Creates a new PlantEntity.
@@ -27,7 +27,7 @@ public abstract class PlantEntity extends ActivityEntity implements HealthEntity
      */
     @Override
     public int getHealth() {
-        return health;
+        return this.getEntityStore() == null ? this.health : this.getEntityStore().getHealth(this.getStoreSlot());
     }
 
     /**
@@ -36,6 +36,22 @@ public abstract class PlantEntity extends ActivityEntity implements HealthEntity
      */
     @Override
     public void setHealth(int health) {
-        this.health = health;
+        if (this.getEntityStore() == null) {
+            this.health = health;
+        } else {
+            this.getEntityStore().setHealth(this.getStoreSlot(), health);
+        }
+    }
+
+    @Override
+    protected void copyTo(EntityStore store, int slot) {
+        super.copyTo(store, slot);
+        store.setHealth(slot, this.health);
+    }
+
+    @Override
+    protected void copyFrom(EntityStore store, int slot) {
+        super.copyFrom(store, slot);
+        this.health = store.getHealth(slot);
     }
 }
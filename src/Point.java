@@ -12,6 +12,26 @@ public final class Point {
         this.y = y;
     }
 
+    /**
+     * Packs a coordinate into one long, x in the high 32 bits and y in the low 32 bits, so
+     * hot paths can pass positions around without allocating Points.
+     */
+    public static long pack(int x, int y) {
+        return ((long) x << 32) | (y & 0xffffffffL);
+    }
+
+    public static int unpackX(long packed) {
+        return (int) (packed >> 32);
+    }
+
+    public static int unpackY(long packed) {
+        return (int) packed;
+    }
+
+    public long pack() {
+        return pack(this.x, this.y);
+    }
+
     public int distanceSquared(Point p2) {
         int deltaX = this.x - p2.x;
         int deltaY = this.y - p2.y;
@@ -28,7 +48,7 @@ public final class Point {
     }
 
     public boolean equals(Object other) {
-        return other instanceof Point && ((Point) other).x == this.x && ((Point) other).y == this.y;
+        return this == other || other instanceof Point && ((Point) other).x == this.x && ((Point) other).y == this.y;
     }
 
     public int hashCode() {
@@ -0,0 +1,283 @@
+import java.util.Arrays;
+
+/**
+ * An EventScheduler that stores events as primitives instead of Event and Action objects.
+ *
+ * Every event lives in a numbered slot of parallel arrays: its time, its sequence number,
+ * and a packed long holding the entity's handle, the ActionKind and the animation repeat
+ * count. The slots are ordered by an indexed binary heap of slot numbers, and each entity's
+ * pending slots are chained together so they can all be cancelled at once. Entities are
+ * referred to by dense int handles, which are recycled along with the slots, so once the
+ * arrays have grown to the world's size, scheduling and running events allocates nothing.
+ */
+public final class PrimitiveEventScheduler extends EventScheduler {
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int NONE = -1;
+
+    private static final int ACTIVITY = ActionKind.ACTIVITY.ordinal();
+    private static final int ANIMATION = ActionKind.ANIMATION.ordinal();
+    private static final int KIND_SHIFT = 24;
+    private static final int REPEAT_MASK = (1 << KIND_SHIFT) - 1;
+
+    // activities need these when they run; they are the same for every event in a world
+    private WorldModel world;
+    private ImageStore imageStore;
+
+    // event slots
+    private double[] eventTimes;
+    private long[] eventSequences;
+    private long[] eventPayloads;
+    private int[] eventHeapIndex;
+    private int[] previousPending;
+    private int[] nextPending;
+    private int freeEvent;
+
+    // heap of event slots, earliest first
+    private int[] heap;
+    private int heapSize;
+
+    // entity handles
+    private Entity[] entities;
+    private int[] firstPending;
+    private int[] freeHandles;
+    private int freeHandleCount;
+    private int handleCount;
+
+    public PrimitiveEventScheduler() {
+        this.eventTimes = new double[INITIAL_CAPACITY];
+        this.eventSequences = new long[INITIAL_CAPACITY];
+        this.eventPayloads = new long[INITIAL_CAPACITY];
+        this.eventHeapIndex = new int[INITIAL_CAPACITY];
+        this.previousPending = new int[INITIAL_CAPACITY];
+        this.nextPending = new int[INITIAL_CAPACITY];
+        this.heap = new int[INITIAL_CAPACITY];
+        this.entities = new Entity[INITIAL_CAPACITY];
+        this.firstPending = new int[INITIAL_CAPACITY];
+        this.freeHandles = new int[INITIAL_CAPACITY];
+        this.chainFreeEvents(0);
+    }
+
+    @Override
+    public void updateOnTime(double time) {
+        double stopTime = this.currentTime + time;
+        while (this.heapSize > 0 && this.eventTimes[this.heap[0]] <= stopTime) {
+            int event = this.heap[0];
+            double eventTime = this.eventTimes[event];
+            long payload = this.eventPayloads[event];
+            Entity entity = this.entities[(int) (payload >>> 32)];
+
+            this.removeEvent(event);
+            this.currentTime = eventTime;
+            this.execute(entity, payload);
+        }
+        this.currentTime = stopTime;
+    }
+
+    private void execute(Entity entity, long payload) {
+        int kind = (int) (payload >>> KIND_SHIFT) & 0xff;
+        int repeatCount = (int) payload & REPEAT_MASK;
+
+        if (kind == ACTIVITY) {
+            this.executing(this.currentTime, ActionKind.ACTIVITY, entity);
+            ((ActivityEntity) entity).executeActivity(this.world, this.imageStore, this);
+        } else if (kind == ANIMATION) {
+            this.executing(this.currentTime, ActionKind.ANIMATION, entity);
+            AnimationEntity animated = (AnimationEntity) entity;
+            animated.nextImage();
+
+            if (repeatCount != 1) {
+                this.queueAnimation(animated, Math.max(repeatCount - 1, 0), animated.getAnimationPeriod());
+            }
+        }
+    }
+
+    @Override
+    public int getQueueSize() {
+        return this.heapSize;
+    }
+
+    @Override
+    public void unscheduleAllEvents(Entity entity) {
+        int handle = entity.getEventHandle();
+        if (handle == NONE) {
+            return;
+        }
+        while (this.firstPending[handle] != NONE) {
+            this.removeEvent(this.firstPending[handle]);
+        }
+    }
+
+    @Override
+    public void scheduleActivity(ActivityEntity entity, WorldModel world, ImageStore imageStore, double afterPeriod) {
+        this.world = world;
+        this.imageStore = imageStore;
+        this.scheduleEvent(entity, ACTIVITY, 0, afterPeriod);
+    }
+
+    @Override
+    protected void queueAnimation(AnimationEntity entity, int repeatCount, double afterPeriod) {
+        this.scheduleEvent(entity, ANIMATION, Math.min(repeatCount, REPEAT_MASK), afterPeriod);
+    }
+
+    private void scheduleEvent(Entity entity, int kind, int repeatCount, double afterPeriod) {
+        int handle = this.handleOf(entity);
+        if (this.freeEvent == NONE) {
+            this.growEvents();
+        }
+        int event = this.freeEvent;
+        this.freeEvent = this.nextPending[event];
+
+        this.eventTimes[event] = this.currentTime + afterPeriod;
+        this.eventSequences[event] = this.nextSequence();
+        this.eventPayloads[event] = ((long) handle << 32) | ((long) kind << KIND_SHIFT) | repeatCount;
+
+        // push onto the front of the entity's chain of pending events
+        int head = this.firstPending[handle];
+        this.previousPending[event] = NONE;
+        this.nextPending[event] = head;
+        if (head != NONE) {
+            this.previousPending[head] = event;
+        }
+        this.firstPending[handle] = event;
+
+        if (this.heapSize == this.heap.length) {
+            this.heap = Arrays.copyOf(this.heap, this.heap.length * 2);
+        }
+        this.heap[this.heapSize] = event;
+        this.eventHeapIndex[event] = this.heapSize;
+        this.heapSize++;
+        this.siftUp(this.heapSize - 1);
+    }
+
+    /**
+     * Takes an event out of the heap and its entity's chain, and returns its slot to the
+     * free list. An entity with nothing left pending gives its handle back.
+     */
+    private void removeEvent(int event) {
+        int handle = (int) (this.eventPayloads[event] >>> 32);
+        int previous = this.previousPending[event];
+        int next = this.nextPending[event];
+
+        if (previous != NONE) {
+            this.nextPending[previous] = next;
+        } else {
+            this.firstPending[handle] = next;
+        }
+        if (next != NONE) {
+            this.previousPending[next] = previous;
+        }
+
+        int index = this.eventHeapIndex[event];
+        this.heapSize--;
+        if (index != this.heapSize) {
+            int last = this.heap[this.heapSize];
+            this.heap[index] = last;
+            this.eventHeapIndex[last] = index;
+            if (!this.siftUp(index)) {
+                this.siftDown(index);
+            }
+        }
+
+        this.eventHeapIndex[event] = NONE;
+        this.nextPending[event] = this.freeEvent;
+        this.freeEvent = event;
+
+        if (this.firstPending[handle] == NONE) {
+            this.releaseHandle(handle);
+        }
+    }
+
+    private int handleOf(Entity entity) {
+        int handle = entity.getEventHandle();
+        if (handle != NONE) {
+            return handle;
+        }
+        if (this.freeHandleCount > 0) {
+            handle = this.freeHandles[--this.freeHandleCount];
+        } else {
+            if (this.handleCount == this.entities.length) {
+                int capacity = this.entities.length * 2;
+                this.entities = Arrays.copyOf(this.entities, capacity);
+                this.firstPending = Arrays.copyOf(this.firstPending, capacity);
+                this.freeHandles = Arrays.copyOf(this.freeHandles, capacity);
+            }
+            handle = this.handleCount++;
+        }
+        this.entities[handle] = entity;
+        this.firstPending[handle] = NONE;
+        entity.setEventHandle(handle);
+        return handle;
+    }
+
+    private void releaseHandle(int handle) {
+        this.entities[handle].setEventHandle(NONE);
+        this.entities[handle] = null;
+        this.freeHandles[this.freeHandleCount++] = handle;
+    }
+
+    private void growEvents() {
+        int oldCapacity = this.eventTimes.length;
+        int capacity = oldCapacity * 2;
+        this.eventTimes = Arrays.copyOf(this.eventTimes, capacity);
+        this.eventSequences = Arrays.copyOf(this.eventSequences, capacity);
+        this.eventPayloads = Arrays.copyOf(this.eventPayloads, capacity);
+        this.eventHeapIndex = Arrays.copyOf(this.eventHeapIndex, capacity);
+        this.previousPending = Arrays.copyOf(this.previousPending, capacity);
+        this.nextPending = Arrays.copyOf(this.nextPending, capacity);
+        this.chainFreeEvents(oldCapacity);
+    }
+
+    /**
+     * Links the event slots from start to the end of the arrays into the free list.
+     * Free slots are chained through nextPending.
+     */
+    private void chainFreeEvents(int start) {
+        for (int event = start; event < this.eventTimes.length; event++) {
+            this.eventHeapIndex[event] = NONE;
+            this.nextPending[event] = event + 1 < this.eventTimes.length ? event + 1 : NONE;
+        }
+        this.freeEvent = start;
+    }
+
+    private int compare(int event1, int event2) {
+        return compareEvents(this.eventTimes[event1], this.eventSequences[event1], this.eventTimes[event2], this.eventSequences[event2]);
+    }
+
+    private boolean siftUp(int index) {
+        int event = this.heap[index];
+        int start = index;
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            int parentEvent = this.heap[parent];
+            if (this.compare(event, parentEvent) >= 0) {
+                break;
+            }
+            this.heap[index] = parentEvent;
+            this.eventHeapIndex[parentEvent] = index;
+            index = parent;
+        }
+        this.heap[index] = event;
+        this.eventHeapIndex[event] = index;
+        return index != start;
+    }
+
+    private void siftDown(int index) {
+        int event = this.heap[index];
+        int half = this.heapSize >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            int right = child + 1;
+            if (right < this.heapSize && this.compare(this.heap[right], this.heap[child]) < 0) {
+                child = right;
+            }
+            if (this.compare(event, this.heap[child]) <= 0) {
+                break;
+            }
+            this.heap[index] = this.heap[child];
+            this.eventHeapIndex[this.heap[index]] = index;
+            index = child;
+        }
+        this.heap[index] = event;
+        this.eventHeapIndex[event] = index;
+    }
+}
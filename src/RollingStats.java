@@ -0,0 +1,91 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The most recent samples of some measurement, kept in a ring so their percentiles can be
+ * read at any time.
+ *
+ * One thread records samples and any thread may read them, without locks: each sample is
+ * written to its slot before the count that makes it visible is published. A reader that
+ * races the writer may see a sample a moment newer than the count suggests, which does not
+ * matter for percentiles over hundreds of samples.
+ */
+public final class RollingStats {
+    public static final int DEFAULT_CAPACITY = 256;
+
+    private final AtomicLongArray samples;
+    private final AtomicLong count;
+
+    public RollingStats() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a new RollingStats.
+     * @param capacity The number of recent samples to keep.
+     */
+    public RollingStats(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("RollingStats requires a positive capacity");
+        }
+        this.samples = new AtomicLongArray(capacity);
+        this.count = new AtomicLong();
+    }
+
+    /**
+     * Records a sample, replacing the oldest one if the ring is full. Only one thread may
+     * record samples.
+     */
+    public void record(long sample) {
+        long index = this.count.get();
+        this.samples.lazySet((int) (index % this.samples.length()), sample);
+        this.count.set(index + 1);
+    }
+
+    /**
+     * @return The number of samples ever recorded.
+     */
+    public long getCount() {
+        return this.count.get();
+    }
+
+    /**
+     * @return The most recent sample, or 0 if there are none.
+     */
+    public long getLatest() {
+        long count = this.count.get();
+        return count == 0 ? 0 : this.samples.get((int) ((count - 1) % this.samples.length()));
+    }
+
+    /**
+     * @return The kept samples, oldest first.
+     */
+    public long[] getSamples() {
+        long count = this.count.get();
+        int size = (int) Math.min(count, this.samples.length());
+        long[] kept = new long[size];
+        for (int i = 0; i < size; i++) {
+            kept[i] = this.samples.get((int) ((count - size + i) % this.samples.length()));
+        }
+        return kept;
+    }
+
+    /**
+     * @param fraction The fraction of kept samples at or below the result, such as 0.99.
+     * @return The percentile of the kept samples, or 0 if there are none.
+     */
+    public long percentile(double fraction) {
+        int size = (int) Math.min(this.count.get(), this.samples.length());
+        if (size == 0) {
+            return 0;
+        }
+        long[] sorted = new long[size];
+        for (int i = 0; i < size; i++) {
+            sorted[i] = this.samples.get(i);
+        }
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(fraction * size) - 1;
+        return sorted[Math.max(0, Math.min(size - 1, rank))];
+    }
+}
@@ -20,6 +20,11 @@ public class Sapling extends PlantEntity{
         this.healthLimit = SAPLING_HEALTH_LIMIT;
     }
 
+    @Override
+    public EntityKind getKind() {
+        return EntityKind.SAPLING;
+    }
+
     /**
      * Adds an activity to the scheduler.
      * @param world      The game world.
@@ -27,10 +32,9 @@ public class Sapling extends PlantEntity{
      * @param scheduler  Stores all the scheduled events.
      */
     public void executeActivity(WorldModel world, ImageStore imageStore, EventScheduler scheduler) {
-        this.health++;
+        this.setHealth(this.getHealth() + 1);
         if (!this.transform(world, scheduler, imageStore)) {
-            ActivityAction newAction = new ActivityAction(this, world, imageStore);
-            scheduler.scheduleEvent(this, newAction, this.actionPeriod);
+            scheduler.scheduleActivity(this, world, imageStore, this.actionPeriod);
         }
     }
 
@@ -41,16 +45,16 @@ public class Sapling extends PlantEntity{
      * @param scheduler  Stores all the scheduled events.
      */
     public boolean transform(WorldModel world, EventScheduler scheduler, ImageStore imageStore) {
-        if (this.health <= 0) {
-            Stump stump = new Stump(STUMP_KEY + "_" + this.id, this.position, imageStore.getImageList(STUMP_KEY));
+        if (this.getHealth() <= 0) {
+            Stump stump = new Stump(STUMP_KEY + "_" + this.id, this.getPosition(), imageStore.getImageList(STUMP_KEY));
 
             world.removeEntity(scheduler, this);
 
             world.addEntity(stump);
 
             return true;
-        } else if (this.health >= this.healthLimit) {
-            Tree tree = new Tree(TREE_KEY + "_" + this.id, this.position, Functions.getNumFromRange(TREE_ACTION_MAX, TREE_ACTION_MIN), Functions.getNumFromRange(TREE_ANIMATION_MAX, TREE_ANIMATION_MIN), Functions.getIntFromRange(TREE_HEALTH_MAX, TREE_HEALTH_MIN), imageStore.getImageList(TREE_KEY));
+        } else if (this.getHealth() >= this.healthLimit) {
+            Tree tree = new Tree(TREE_KEY + "_" + this.id, this.getPosition(), Functions.getNumFromRange(world.getRandom(), TREE_ACTION_MAX, TREE_ACTION_MIN), Functions.getNumFromRange(world.getRandom(), TREE_ANIMATION_MAX, TREE_ANIMATION_MIN), Functions.getIntFromRange(world.getRandom(), TREE_HEALTH_MAX, TREE_HEALTH_MIN), imageStore.getImageList(TREE_KEY));
 
             world.removeEntity(scheduler, this);
 
@@ -0,0 +1,73 @@
+import java.util.List;
+import java.util.Scanner;
+
+/**
+ * One independent run of the simulation: a WorldModel and the EventScheduler driving it.
+ * A Simulation shares nothing with other Simulations except its ImageStore, which is only
+ * read, so many of them can run in one process at the same time.
+ */
+public final class Simulation {
+    private final WorldModel world;
+    private final EventScheduler scheduler;
+
+    /**
+     * Loads a world and schedules the actions of its entities.
+     * @param saveFile A Scanner that is set up to read a save file.
+     * @param seed The seed for the world's random choices.
+     * @param scheduler The scheduler to drive the world with.
+     * @param imageStore Images to use for Entities and Backgrounds.
+     */
+    public Simulation(Scanner saveFile, long seed, EventScheduler scheduler, ImageStore imageStore) {
+        this(new WorldModel(seed), saveFile, scheduler, imageStore);
+    }
+
+    /**
+     * Loads a world that has already been set up (e.g. with an EntityStore) and schedules
+     * the actions of its entities.
+     * @param world A world that has not been loaded yet.
+     * @param saveFile A Scanner that is set up to read a save file.
+     * @param scheduler The scheduler to drive the world with.
+     * @param imageStore Images to use for Entities and Backgrounds.
+     */
+    public Simulation(WorldModel world, Scanner saveFile, EventScheduler scheduler, ImageStore imageStore) {
+        this.world = world;
+        this.world.load(saveFile, imageStore, VirtualWorld.createDefaultBackground(imageStore));
+        this.scheduler = scheduler;
+        VirtualWorld.scheduleActions(this.world, scheduler, imageStore);
+    }
+
+    public WorldModel getWorld() {
+        return this.world;
+    }
+
+    public EventScheduler getScheduler() {
+        return this.scheduler;
+    }
+
+    public double getCurrentTime() {
+        return this.scheduler.getCurrentTime();
+    }
+
+    /**
+     * Advances the world by the given time.
+     * @param time The simulated time (seconds) to advance by.
+     */
+    public void update(double time) {
+        this.scheduler.updateOnTime(time);
+    }
+
+    /**
+     * Advances the world in steps until it has run for duration in total.
+     * @param duration The simulated time (seconds) to run until.
+     * @param step The simulated time (seconds) of each update.
+     */
+    public void run(double duration, double step) {
+        while (this.getCurrentTime() < duration) {
+            this.update(Math.min(step, duration - this.getCurrentTime()));
+        }
+    }
+
+    public List<String> log() {
+        return this.world.log();
+    }
+}
@@ -0,0 +1,102 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+/**
+ * Runs many independent Simulations in one process, for example Monte-Carlo variants of the
+ * same starting world with different seeds. Every Simulation gets its own WorldModel and
+ * EventScheduler, and they all share one ImageStore, which is only read while they run.
+ */
+public final class SimulationFarm {
+    private final ImageStore imageStore;
+    private final ExecutorService executor;
+
+    /**
+     * Creates a new SimulationFarm.
+     * @param imageStore The images shared by every world.
+     * @param executor The threads the simulations run on.
+     */
+    public SimulationFarm(ImageStore imageStore, ExecutorService executor) {
+        this.imageStore = imageStore;
+        this.executor = executor;
+    }
+
+    /**
+     * @return A SimulationFarm that runs every simulation on its own virtual thread.
+     */
+    public static SimulationFarm onVirtualThreads(ImageStore imageStore) {
+        return new SimulationFarm(imageStore, Executors.newVirtualThreadPerTaskExecutor());
+    }
+
+    /**
+     * @return A SimulationFarm that runs the simulations on a fork-join pool.
+     */
+    public static SimulationFarm onForkJoinPool(ImageStore imageStore, ForkJoinPool pool) {
+        return new SimulationFarm(imageStore, pool);
+    }
+
+    /**
+     * Builds one variant per seed, all starting from the same save.
+     * @param saveText The contents of the save file every variant starts from.
+     * @param firstSeed The seed of the first variant; the others count up from it.
+     * @param count The number of variants.
+     * @param schedulerFactory Creates the scheduler for each variant's world.
+     */
+    public static List<SimulationVariant> seedSweep(String saveText, long firstSeed, int count, Supplier<EventScheduler> schedulerFactory) {
+        List<SimulationVariant> variants = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            long seed = firstSeed + i;
+            variants.add(new SimulationVariant("seed " + seed, saveText, seed, schedulerFactory));
+        }
+        return variants;
+    }
+
+    /**
+     * Runs every variant for the same simulated time and waits for all of them to finish.
+     * @param variants The simulations to run.
+     * @param duration The simulated time (seconds) to run each of them for.
+     * @param step The simulated time (seconds) of each update.
+     * @return One result per variant, in the same order as the variants.
+     */
+    public List<SimulationResult> run(List<SimulationVariant> variants, double duration, double step) {
+        List<Future<SimulationResult>> futures = new ArrayList<>(variants.size());
+        for (SimulationVariant variant : variants) {
+            futures.add(this.executor.submit(() -> this.runVariant(variant, duration, step)));
+        }
+
+        List<SimulationResult> results = new ArrayList<>(variants.size());
+        try {
+            for (Future<SimulationResult> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("interrupted while waiting for simulations");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+        return results;
+    }
+
+    /**
+     * Stops accepting work and releases the farm's threads.
+     */
+    public void shutdown() {
+        this.executor.shutdown();
+    }
+
+    private SimulationResult runVariant(SimulationVariant variant, double duration, double step) {
+        long start = System.nanoTime();
+        Simulation simulation = new Simulation(new Scanner(variant.getSaveText()), variant.getSeed(), variant.createScheduler(), this.imageStore);
+        long loaded = System.nanoTime();
+        simulation.run(duration, step);
+        long finished = System.nanoTime();
+
+        return new SimulationResult(variant, simulation.log(), simulation.getScheduler().getEventCount(), loaded - start, finished - loaded);
+    }
+}
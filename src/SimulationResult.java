@@ -0,0 +1,49 @@
+import java.util.List;
+
+/**
+ * What one Simulation in a SimulationFarm ended with, and how long it took.
+ */
+public final class SimulationResult {
+    private final SimulationVariant variant;
+    private final List<String> log;
+    private final long eventCount;
+    private final long loadNanos;
+    private final long runNanos;
+
+    public SimulationResult(SimulationVariant variant, List<String> log, long eventCount, long loadNanos, long runNanos) {
+        this.variant = variant;
+        this.log = log;
+        this.eventCount = eventCount;
+        this.loadNanos = loadNanos;
+        this.runNanos = runNanos;
+    }
+
+    public SimulationVariant getVariant() {
+        return this.variant;
+    }
+
+    /**
+     * @return The WorldModel.log() at the end of the run.
+     */
+    public List<String> getLog() {
+        return this.log;
+    }
+
+    public long getEventCount() {
+        return this.eventCount;
+    }
+
+    /**
+     * @return The wall-clock time (nanoseconds) spent parsing the save and scheduling actions.
+     */
+    public long getLoadNanos() {
+        return this.loadNanos;
+    }
+
+    /**
+     * @return The wall-clock time (nanoseconds) spent running events.
+     */
+    public long getRunNanos() {
+        return this.runNanos;
+    }
+}
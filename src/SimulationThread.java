@@ -0,0 +1,160 @@
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a world's scheduler on its own thread, keeping simulated time in step with the wall
+ * clock, so a burst of events does not hold up drawing and a slow frame does not hold up
+ * the simulation.
+ *
+ * After each update the thread records the cells in view into a WorldSnapshot and hands
+ * it over through a triple buffer: the simulation fills the back snapshot, then swaps it
+ * with the middle one; the view swaps the middle one for its front snapshot whenever a new
+ * one has been published. Neither side ever waits for the other, and no snapshot is
+ * written while the view can see it.
+ *
+ * Once started, only this thread may touch the world. Anything else that needs the world,
+ * such as answering a mouse click, should be passed to execute.
+ */
+public final class SimulationThread implements Runnable {
+    public static final long DEFAULT_PERIOD_MILLIS = 5;
+    private static final int FRESH = 4;
+    private static final int INDEX = 3;
+
+    private final WorldModel world;
+    private final EventScheduler scheduler;
+    private final long periodMillis;
+    private final WorldSnapshot[] snapshots;
+    private final AtomicInteger middle;
+    private final Queue<Runnable> tasks;
+    private int back;
+    private int front;
+    private volatile long viewOrigin;
+    private volatile boolean running;
+    private Instrumentation instrumentation;
+    private Thread thread;
+
+    /**
+     * Creates a new SimulationThread.
+     * @param world The game world.
+     * @param scheduler The scheduler of the world's events.
+     * @param numRows The number of rows in view.
+     * @param numCols The number of columns in view.
+     * @param periodMillis The time (milliseconds) to sleep between updates.
+     */
+    public SimulationThread(WorldModel world, EventScheduler scheduler, int numRows, int numCols, long periodMillis) {
+        this.world = world;
+        this.scheduler = scheduler;
+        this.periodMillis = periodMillis;
+        this.snapshots = new WorldSnapshot[]{new WorldSnapshot(numRows, numCols), new WorldSnapshot(numRows, numCols), new WorldSnapshot(numRows, numCols)};
+        this.back = 0;
+        this.middle = new AtomicInteger(1);
+        this.front = 2;
+        this.tasks = new ConcurrentLinkedQueue<>();
+        this.publish();
+    }
+
+    /**
+     * Makes the thread record how long each update takes. Call this before start.
+     * @param instrumentation Where to record updates, or null for nowhere.
+     */
+    public void setInstrumentation(Instrumentation instrumentation) {
+        this.instrumentation = instrumentation;
+    }
+
+    /**
+     * Starts the thread. Simulated time starts at the scheduler's current time. The world
+     * stops marking dirty cells, since the view compares snapshots instead and would never
+     * clear them.
+     */
+    public void start() {
+        this.world.setDirtyCells(null);
+        this.running = true;
+        this.thread = new Thread(this, "simulation");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Stops the thread and waits for it to finish. The last snapshot shows the world as it
+     * was left, and the world may be used from the calling thread again.
+     */
+    public void stop() {
+        this.running = false;
+        if (this.thread != null) {
+            this.thread.interrupt();
+            try {
+                this.thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            this.thread = null;
+        }
+        this.runTasks();
+        this.publish();
+    }
+
+    @Override
+    public void run() {
+        long startNanos = System.nanoTime();
+        double startTime = this.scheduler.getCurrentTime();
+        while (this.running) {
+            this.runTasks();
+            double wallTime = startTime + (System.nanoTime() - startNanos) * 1e-9;
+            boolean instrumented = this.instrumentation != null && this.instrumentation.isEnabled();
+            long updateStart = instrumented ? System.nanoTime() : 0;
+            if (wallTime > this.scheduler.getCurrentTime()) {
+                this.scheduler.updateOnTime(wallTime - this.scheduler.getCurrentTime());
+            }
+            if (instrumented) {
+                this.instrumentation.recordUpdate(System.nanoTime() - updateStart, this.scheduler, this.world);
+            }
+            this.publish();
+
+            try {
+                Thread.sleep(this.periodMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Runs a task on the simulation thread between updates.
+     */
+    public void execute(Runnable task) {
+        this.tasks.add(task);
+    }
+
+    /**
+     * Sets which cells the snapshots record, starting from the next one.
+     * @param col The leftmost column in view.
+     * @param row The top row in view.
+     */
+    public void setView(int col, int row) {
+        this.viewOrigin = Point.pack(col, row);
+    }
+
+    /**
+     * @return The latest published snapshot. It stays the same until the next call.
+     */
+    public WorldSnapshot getSnapshot() {
+        if ((this.middle.get() & FRESH) != 0) {
+            this.front = this.middle.getAndSet(this.front) & INDEX;
+        }
+        return this.snapshots[this.front];
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = this.tasks.poll()) != null) {
+            task.run();
+        }
+    }
+
+    private void publish() {
+        long origin = this.viewOrigin;
+        this.snapshots[this.back].capture(this.world, Point.unpackX(origin), Point.unpackY(origin), this.scheduler.getCurrentTime());
+        this.back = this.middle.getAndSet(this.back | FRESH) & INDEX;
+    }
+}
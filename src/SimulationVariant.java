@@ -0,0 +1,42 @@
+import java.util.function.Supplier;
+
+/**
+ * The starting point of one Simulation in a SimulationFarm: a save file's contents, a seed
+ * and the kind of scheduler to drive it with.
+ */
+public final class SimulationVariant {
+    private final String name;
+    private final String saveText;
+    private final long seed;
+    private final Supplier<EventScheduler> schedulerFactory;
+
+    /**
+     * Creates a new SimulationVariant.
+     * @param name A name to tell this variant's result apart from the others.
+     * @param saveText The contents of the save file to start from.
+     * @param seed The seed for the world's random choices.
+     * @param schedulerFactory Creates the scheduler for this variant's world.
+     */
+    public SimulationVariant(String name, String saveText, long seed, Supplier<EventScheduler> schedulerFactory) {
+        this.name = name;
+        this.saveText = saveText;
+        this.seed = seed;
+        this.schedulerFactory = schedulerFactory;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public String getSaveText() {
+        return this.saveText;
+    }
+
+    public long getSeed() {
+        return this.seed;
+    }
+
+    public EventScheduler createScheduler() {
+        return this.schedulerFactory.get();
+    }
+}
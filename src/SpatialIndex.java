@@ -0,0 +1,224 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Finds the nearest entity of a given type without looking at every entity in the world.
+ *
+ * The world is split into square buckets, and every bucket keeps a list of its entities for
+ * each EntityKind. Buckets are only made once an entity is put in them, so the index costs
+ * memory for where entities are rather than for the size of the world. A query searches
+ * rings of buckets outward from the query point and stops once no unsearched bucket can be
+ * closer than the best match so far, or once it has passed every bucket ever used.
+ *
+ * Matches at the same distance are broken the way a full scan of the world would break
+ * them: an entity of the kind declared first in EntityKind wins, then the entity that was
+ * added to the world first.
+ */
+public final class SpatialIndex {
+    public static final int DEFAULT_BUCKET_SIZE = 8;
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final int bucketSize;
+
+    // open-addressed map from packed bucket coordinates to buckets
+    private long[] keys;
+    private Bucket[] buckets;
+    private int bucketCount;
+
+    // the range of bucket coordinates that have ever been used
+    private int minBucketX = Integer.MAX_VALUE;
+    private int maxBucketX = Integer.MIN_VALUE;
+    private int minBucketY = Integer.MAX_VALUE;
+    private int maxBucketY = Integer.MIN_VALUE;
+
+    /**
+     * Creates a new, empty SpatialIndex.
+     * @param bucketSize The width and height (cells) of each bucket.
+     */
+    public SpatialIndex(int bucketSize) {
+        if (bucketSize <= 0) {
+            throw new IllegalArgumentException("SpatialIndex requires a positive bucket size");
+        }
+        this.bucketSize = bucketSize;
+        this.keys = new long[INITIAL_CAPACITY];
+        this.buckets = new Bucket[INITIAL_CAPACITY];
+    }
+
+    public void add(Entity entity) {
+        Point pos = entity.getPosition();
+        this.bucketFor(Math.floorDiv(pos.x, this.bucketSize), Math.floorDiv(pos.y, this.bucketSize)).add(entity);
+    }
+
+    public void remove(Entity entity) {
+        Point pos = entity.getPosition();
+        Bucket bucket = this.bucketAt(Math.floorDiv(pos.x, this.bucketSize), Math.floorDiv(pos.y, this.bucketSize));
+        if (bucket != null) {
+            bucket.remove(entity);
+        }
+    }
+
+    /**
+     * Moves an entity from one cell to another. Call this before changing its position.
+     */
+    public void move(Entity entity, Point oldPos, Point newPos) {
+        int fromX = Math.floorDiv(oldPos.x, this.bucketSize);
+        int fromY = Math.floorDiv(oldPos.y, this.bucketSize);
+        int toX = Math.floorDiv(newPos.x, this.bucketSize);
+        int toY = Math.floorDiv(newPos.y, this.bucketSize);
+        if (fromX != toX || fromY != toY) {
+            this.bucketAt(fromX, fromY).remove(entity);
+            this.bucketFor(toX, toY).add(entity);
+        }
+    }
+
+    /**
+     * @param pos The position to search from.
+     * @param kinds The kinds to look for, as an EntityKind mask.
+     * @return The nearest entity of one of the kinds.
+     */
+    public Optional<Entity> findNearest(Point pos, int kinds) {
+        if (this.bucketCount == 0) {
+            return Optional.empty();
+        }
+        int centerX = Math.floorDiv(pos.x, this.bucketSize);
+        int centerY = Math.floorDiv(pos.y, this.bucketSize);
+        long maxRing = Math.max(Math.max((long) centerX - this.minBucketX, (long) this.maxBucketX - centerX),
+                Math.max((long) centerY - this.minBucketY, (long) this.maxBucketY - centerY));
+
+        Entity nearest = null;
+        long nearestDistance = Long.MAX_VALUE;
+        int nearestKind = Integer.MAX_VALUE;
+
+        // rings nearer than this miss every bucket that has ever been used
+        long firstRing = Math.max(Math.max(0, Math.max((long) this.minBucketX - centerX, (long) centerX - this.maxBucketX)),
+                Math.max((long) this.minBucketY - centerY, (long) centerY - this.maxBucketY));
+
+        for (long ring = firstRing; ring <= maxRing; ring++) {
+            if (nearest != null && ring > 0) {
+                long closest = (ring - 1) * this.bucketSize + 1;
+                if (closest * closest > nearestDistance) {
+                    break;
+                }
+            }
+
+            long fromY = Math.max(centerY - ring, this.minBucketY);
+            long toY = Math.min(centerY + ring, this.maxBucketY);
+            for (long by = fromY; by <= toY; by++) {
+                boolean edgeRow = by == centerY - ring || by == centerY + ring;
+                long step = edgeRow ? 1 : 2 * ring;
+                long fromX = edgeRow ? Math.max(centerX - ring, this.minBucketX) : centerX - ring;
+                long toX = edgeRow ? Math.min(centerX + ring, this.maxBucketX) : centerX + ring;
+                for (long bx = fromX; bx <= toX; bx += step) {
+                    if (bx < this.minBucketX || bx > this.maxBucketX) {
+                        continue;
+                    }
+                    Bucket bucket = this.bucketAt((int) bx, (int) by);
+                    if (bucket == null || (bucket.kinds & kinds) == 0) {
+                        continue;
+                    }
+
+                    for (int remaining = kinds & bucket.kinds; remaining != 0; remaining &= remaining - 1) {
+                        int kind = Integer.numberOfTrailingZeros(remaining);
+                        List<Entity> bucketEntities = bucket.byKind[kind];
+                        for (int i = 0; i < bucketEntities.size(); i++) {
+                            Entity entity = bucketEntities.get(i);
+                            long dx = (long) entity.getPosition().x - pos.x;
+                            long dy = (long) entity.getPosition().y - pos.y;
+                            long distance = dx * dx + dy * dy;
+                            if (distance < nearestDistance
+                                    || (distance == nearestDistance && (kind < nearestKind
+                                        || (kind == nearestKind && entity.getWorldOrder() < nearest.getWorldOrder())))) {
+                                nearest = entity;
+                                nearestDistance = distance;
+                                nearestKind = kind;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        return Optional.ofNullable(nearest);
+    }
+
+    private int slotOf(long key) {
+        long hash = key * 0x9e3779b97f4a7c15L;
+        return (int) (hash >>> 32) & (this.keys.length - 1);
+    }
+
+    private Bucket bucketAt(int bucketX, int bucketY) {
+        long key = Point.pack(bucketX, bucketY);
+        for (int slot = this.slotOf(key); this.buckets[slot] != null; slot = (slot + 1) & (this.keys.length - 1)) {
+            if (this.keys[slot] == key) {
+                return this.buckets[slot];
+            }
+        }
+        return null;
+    }
+
+    private Bucket bucketFor(int bucketX, int bucketY) {
+        Bucket bucket = this.bucketAt(bucketX, bucketY);
+        if (bucket == null) {
+            if ((this.bucketCount + 1) * 2 > this.keys.length) {
+                this.grow();
+            }
+            bucket = new Bucket();
+            this.put(Point.pack(bucketX, bucketY), bucket);
+            this.bucketCount++;
+            this.minBucketX = Math.min(this.minBucketX, bucketX);
+            this.maxBucketX = Math.max(this.maxBucketX, bucketX);
+            this.minBucketY = Math.min(this.minBucketY, bucketY);
+            this.maxBucketY = Math.max(this.maxBucketY, bucketY);
+        }
+        return bucket;
+    }
+
+    private void put(long key, Bucket bucket) {
+        int slot = this.slotOf(key);
+        while (this.buckets[slot] != null) {
+            slot = (slot + 1) & (this.keys.length - 1);
+        }
+        this.keys[slot] = key;
+        this.buckets[slot] = bucket;
+    }
+
+    private void grow() {
+        long[] oldKeys = this.keys;
+        Bucket[] oldBuckets = this.buckets;
+        this.keys = new long[oldKeys.length * 2];
+        this.buckets = new Bucket[oldBuckets.length * 2];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldBuckets[i] != null) {
+                this.put(oldKeys[i], oldBuckets[i]);
+            }
+        }
+    }
+
+    /**
+     * The entities in one bucket, by kind. kinds has a bit set for every non-empty list.
+     */
+    private static final class Bucket {
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private final List<Entity>[] byKind = new List[EntityKind.COUNT];
+        private int kinds;
+
+        private Bucket() {
+            Arrays.setAll(this.byKind, kind -> new ArrayList<>());
+        }
+
+        private void add(Entity entity) {
+            int kind = entity.getKind().ordinal();
+            this.byKind[kind].add(entity);
+            this.kinds |= 1 << kind;
+        }
+
+        private void remove(Entity entity) {
+            int kind = entity.getKind().ordinal();
+            if (this.byKind[kind].remove(entity) && this.byKind[kind].isEmpty()) {
+                this.kinds &= ~(1 << kind);
+            }
+        }
+    }
+}
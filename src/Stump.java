@@ -13,4 +13,9 @@ public class Stump extends Entity {
     public Stump(String id, Point position, List<PImage> images) {
         super(id, position, images);
     }
+
+    @Override
+    public EntityKind getKind() {
+        return EntityKind.STUMP;
+    }
 }
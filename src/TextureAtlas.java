@@ -0,0 +1,329 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+import processing.core.PApplet;
+import processing.core.PGraphics;
+import processing.core.PImage;
+
+/**
+ * Every frame in an ImageStore copied into a few large page images, so drawing a frame
+ * means drawing part of a page and a view draws from the same texture nearly every time.
+ *
+ * Frames are packed onto shelves: left to right along a shelf as tall as its tallest
+ * frame, and a new shelf (or a new page) when a frame does not fit. Frames with the same
+ * pixels, such as the water frames the imagelist repeats, share one region. Entities
+ * keep their frames as PImages; getRegion maps each one to where it is in the atlas.
+ *
+ * An atlas can be written to a directory and read back, which is much quicker than
+ * loading and colour-keying every image on the list again. cacheKey names the directory
+ * after the imagelist's contents and the size and modification time of every image file on
+ * it, so editing a sprite gives a new cache.
+ */
+public final class TextureAtlas {
+    public static final int DEFAULT_PAGE_SIZE = 1024;
+    public static final String LAYOUT_FILE_NAME = "layout";
+    private static final String PAGE_FILE_FORMAT = "page%d.png";
+
+    private final int pageSize;
+    private final List<PImage> pages;
+    private final Map<PImage, Region> regions;
+    private final Map<Integer, List<Region>> regionsByPixels;
+    private int shelfX;
+    private int shelfY;
+    private int shelfHeight;
+
+    /**
+     * Where one frame is in the atlas.
+     */
+    public static final class Region {
+        private final PImage page;
+        private final int pageIndex;
+        private final int x;
+        private final int y;
+        private final int width;
+        private final int height;
+
+        private Region(PImage page, int pageIndex, int x, int y, int width, int height) {
+            this.page = page;
+            this.pageIndex = pageIndex;
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+        }
+
+        public PImage getPage() {
+            return this.page;
+        }
+
+        public int getX() {
+            return this.x;
+        }
+
+        public int getY() {
+            return this.y;
+        }
+
+        public int getWidth() {
+            return this.width;
+        }
+
+        public int getHeight() {
+            return this.height;
+        }
+    }
+
+    /**
+     * Creates a new, empty TextureAtlas.
+     * @param pageSize The width and height (pixels) of each page.
+     */
+    public TextureAtlas(int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("TextureAtlas requires a positive page size");
+        }
+        this.pageSize = pageSize;
+        this.pages = new ArrayList<>();
+        this.regions = new IdentityHashMap<>();
+        this.regionsByPixels = new HashMap<>();
+    }
+
+    /**
+     * Packs every frame in the store into a new atlas, taking the keys in sorted order so
+     * the layout does not depend on how the store's map happens to iterate.
+     * @param imageStore The frames to pack.
+     * @param pageSize The width and height (pixels) of each page.
+     */
+    public static TextureAtlas build(ImageStore imageStore, int pageSize) {
+        TextureAtlas atlas = new TextureAtlas(pageSize);
+        for (String key : new TreeSet<>(imageStore.getImages().keySet())) {
+            for (PImage frame : imageStore.getImages().get(key)) {
+                atlas.add(frame);
+            }
+        }
+        atlas.finish();
+        return atlas;
+    }
+
+    /**
+     * @return The name of the cache directory for an imagelist with these contents and for
+     *         the image files it lists as they are now.
+     */
+    public static String cacheKey(String imageListContents) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(imageListContents.getBytes(StandardCharsets.UTF_8));
+            for (String line : imageListContents.split("\\R")) {
+                String[] attrs = line.split("\\s");
+                if (attrs.length >= 2) {
+                    digest.update(fileStamp(Path.of(attrs[1])).getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            return HexFormat.of().formatHex(digest.digest(), 0, 8);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return The file's size and modification time, or "missing" if it cannot be read.
+     */
+    private static String fileStamp(Path file) {
+        try {
+            return "\n" + Files.size(file) + " " + Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return "\nmissing";
+        }
+    }
+
+    public int getPageCount() {
+        return this.pages.size();
+    }
+
+    public PImage getPage(int index) {
+        return this.pages.get(index);
+    }
+
+    /**
+     * @return Where the frame is in the atlas, or null if it is not in it.
+     */
+    public Region getRegion(PImage frame) {
+        return this.regions.get(frame);
+    }
+
+    /**
+     * Draws a frame from its page, or the frame itself if it is not in the atlas.
+     * @param target Where to draw.
+     * @param frame The frame to draw.
+     * @param x The left edge (pixels) to draw at.
+     * @param y The top edge (pixels) to draw at.
+     */
+    public void draw(PGraphics target, PImage frame, float x, float y) {
+        Region region = this.regions.get(frame);
+        if (region == null) {
+            target.image(frame, x, y);
+        } else {
+            target.image(region.page, x, y, region.width, region.height,
+                    region.x, region.y, region.x + region.width, region.y + region.height);
+        }
+    }
+
+    /**
+     * Copies a frame into the atlas, unless a frame with the same pixels is already in it.
+     * Call finish once every frame has been added.
+     * @return Where the frame is in the atlas.
+     */
+    public Region add(PImage frame) {
+        Region region = this.regions.get(frame);
+        if (region != null) {
+            return region;
+        }
+        frame.loadPixels();
+        int hash = Arrays.hashCode(frame.pixels);
+        List<Region> samePixels = this.regionsByPixels.computeIfAbsent(hash, h -> new ArrayList<>());
+        for (Region candidate : samePixels) {
+            if (this.holds(candidate, frame)) {
+                this.regions.put(frame, candidate);
+                return candidate;
+            }
+        }
+
+        region = this.place(frame.width, frame.height);
+        PImage page = region.page;
+        for (int row = 0; row < frame.height; row++) {
+            System.arraycopy(frame.pixels, row * frame.width, page.pixels, (region.y + row) * this.pageSize + region.x, frame.width);
+        }
+        samePixels.add(region);
+        this.regions.put(frame, region);
+        return region;
+    }
+
+    /**
+     * Marks the pages as changed, so they are uploaded again the next time they are drawn.
+     */
+    public void finish() {
+        for (PImage page : this.pages) {
+            page.updatePixels();
+        }
+    }
+
+    private boolean holds(Region region, PImage frame) {
+        if (region.width != frame.width || region.height != frame.height) {
+            return false;
+        }
+        for (int row = 0; row < frame.height; row++) {
+            if (!Arrays.equals(frame.pixels, row * frame.width, (row + 1) * frame.width,
+                    region.page.pixels, (region.y + row) * this.pageSize + region.x, (region.y + row) * this.pageSize + region.x + frame.width)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Region place(int width, int height) {
+        if (width > this.pageSize || height > this.pageSize) {
+            throw new IllegalArgumentException(String.format("A %dx%d frame does not fit on a %d pixel page", width, height, this.pageSize));
+        }
+        if (this.shelfX + width > this.pageSize) {
+            this.shelfY += this.shelfHeight;
+            this.shelfX = 0;
+            this.shelfHeight = 0;
+        }
+        if (this.pages.isEmpty() || this.shelfY + height > this.pageSize) {
+            PImage page = new PImage(this.pageSize, this.pageSize, PApplet.ARGB);
+            page.loadPixels();
+            this.pages.add(page);
+            this.shelfX = 0;
+            this.shelfY = 0;
+            this.shelfHeight = 0;
+        }
+        int pageIndex = this.pages.size() - 1;
+        Region region = new Region(this.pages.get(pageIndex), pageIndex, this.shelfX, this.shelfY, width, height);
+        this.shelfX += width;
+        this.shelfHeight = Math.max(this.shelfHeight, height);
+        return region;
+    }
+
+    /**
+     * Writes the pages as PNG files, and a layout file listing where each of the store's
+     * frames is: "key frameIndex page x y width height" per line.
+     * @param directory The directory to write to, which is made if it does not exist.
+     * @param imageStore The store whose frames this atlas was built from.
+     */
+    public void write(Path directory, ImageStore imageStore) {
+        try {
+            Files.createDirectories(directory);
+            for (int i = 0; i < this.pages.size(); i++) {
+                this.pages.get(i).save(directory.resolve(String.format(PAGE_FILE_FORMAT, i)).toAbsolutePath().toString());
+            }
+            List<String> layout = new ArrayList<>();
+            for (String key : new TreeSet<>(imageStore.getImages().keySet())) {
+                List<PImage> frames = imageStore.getImages().get(key);
+                for (int i = 0; i < frames.size(); i++) {
+                    Region region = this.regions.get(frames.get(i));
+                    if (region != null) {
+                        layout.add(String.format("%s %d %d %d %d %d %d", key, i, region.pageIndex, region.x, region.y, region.width, region.height));
+                    }
+                }
+            }
+            Files.write(directory.resolve(LAYOUT_FILE_NAME), layout);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Reads an atlas written by write, filling the store with frames cut from its pages.
+     * @param directory The directory the atlas was written to.
+     * @param imageStore The store to add the frames to.
+     * @param screen Loads the page images.
+     */
+    public static TextureAtlas read(Path directory, ImageStore imageStore, PApplet screen) {
+        List<String> layout;
+        try {
+            layout = Files.readAllLines(directory.resolve(LAYOUT_FILE_NAME));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        int pageCount = 0;
+        for (String line : layout) {
+            pageCount = Math.max(pageCount, Integer.parseInt(line.split(" ")[2]) + 1);
+        }
+        List<PImage> pages = new ArrayList<>();
+        for (int i = 0; i < pageCount; i++) {
+            PImage page = screen.loadImage(directory.resolve(String.format(PAGE_FILE_FORMAT, i)).toAbsolutePath().toString());
+            if (page == null) {
+                throw new UncheckedIOException(new IOException("Atlas page is missing: " + i));
+            }
+            page.format = PApplet.ARGB;
+            page.loadPixels();
+            pages.add(page);
+        }
+
+        TextureAtlas atlas = new TextureAtlas(pages.isEmpty() ? DEFAULT_PAGE_SIZE : pages.get(0).width);
+        atlas.pages.addAll(pages);
+        Map<String, Region> regionsByPlace = new HashMap<>();
+        Map<Region, PImage> framesByRegion = new HashMap<>();
+        for (String line : layout) {
+            String[] fields = line.split(" ");
+            int pageIndex = Integer.parseInt(fields[2]);
+            int x = Integer.parseInt(fields[3]);
+            int y = Integer.parseInt(fields[4]);
+            int width = Integer.parseInt(fields[5]);
+            int height = Integer.parseInt(fields[6]);
+
+            Region region = regionsByPlace.computeIfAbsent(pageIndex + " " + x + " " + y,
+                    place -> new Region(pages.get(pageIndex), pageIndex, x, y, width, height));
+            PImage frame = framesByRegion.computeIfAbsent(region, r -> r.page.get(r.x, r.y, r.width, r.height));
+            atlas.regions.put(frame, region);
+            WorldModel.getImages(imageStore.getImages(), fields[0]).add(frame);
+        }
+        return atlas;
+    }
+}
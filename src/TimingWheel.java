@@ -0,0 +1,182 @@
+/**
+ * A hashed timing wheel of Events. Time is cut into ticks of a fixed resolution, and each
+ * tick hashes to one of a ring of slots. Adding or cancelling an event only links or unlinks
+ * it from its slot, so both are O(1) for events beyond the current tick.
+ *
+ * When the wheel reaches a tick, that tick's events are moved into a small EventHeap, which
+ * hands them out in exact time order. Firing order within a slot is therefore the same
+ * deterministic order the plain EventHeap would use.
+ */
+public final class TimingWheel implements EventQueue {
+    public static final double DEFAULT_RESOLUTION = 0.010;
+    public static final int DEFAULT_SLOTS = 512;
+
+    private final double resolution;
+    private final Event[] slots;
+    private final int slotMask;
+    private final EventHeap ready;
+    private long cursorTick;
+    private int wheelCount;
+
+    /**
+     * Creates a TimingWheel with a 10ms tick and 512 slots (one revolution is 5.12 seconds).
+     */
+    public TimingWheel() {
+        this(DEFAULT_RESOLUTION, DEFAULT_SLOTS);
+    }
+
+    /**
+     * Creates a new TimingWheel.
+     * @param resolution The length (seconds) of one tick.
+     * @param slotCount The number of slots in the wheel; rounded up to a power of two.
+     */
+    public TimingWheel(double resolution, int slotCount) {
+        if (resolution <= 0 || slotCount <= 0) {
+            throw new IllegalArgumentException("TimingWheel requires a positive resolution and slot count");
+        }
+        int size = Integer.highestOneBit(slotCount);
+        if (size < slotCount) {
+            size <<= 1;
+        }
+        this.resolution = resolution;
+        this.slots = new Event[size];
+        this.slotMask = size - 1;
+        this.ready = new EventHeap();
+        this.cursorTick = 0;
+        this.wheelCount = 0;
+    }
+
+    public double getResolution() {
+        return this.resolution;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return this.ready.isEmpty() && this.wheelCount == 0;
+    }
+
+    @Override
+    public int size() {
+        return this.ready.size() + this.wheelCount;
+    }
+
+    /**
+     * @return The earliest event, or null if the wheel is empty.
+     */
+    @Override
+    public Event peek() {
+        while (this.ready.isEmpty() && this.wheelCount > 0) {
+            this.advance();
+        }
+        return this.ready.peek();
+    }
+
+    /**
+     * Removes and returns the earliest event.
+     * @return The earliest event, or null if the wheel is empty.
+     */
+    @Override
+    public Event poll() {
+        return this.peek() == null ? null : this.ready.poll();
+    }
+
+    /**
+     * Adds an event. Events at or before the wheel's current tick go straight to the ready
+     * heap; later events are linked into the slot for their tick.
+     * @param event An event that is not currently in any queue.
+     */
+    @Override
+    public void add(Event event) {
+        long tick = this.tickOf(event);
+
+        if (tick <= this.cursorTick) {
+            this.ready.add(event);
+        } else {
+            int slot = (int) (tick & this.slotMask);
+            Event head = this.slots[slot];
+            event.setPreviousInSlot(null);
+            event.setNextInSlot(head);
+            if (head != null) {
+                head.setPreviousInSlot(event);
+            }
+            this.slots[slot] = event;
+            this.wheelCount++;
+        }
+    }
+
+    /**
+     * Removes an event, wherever it currently sits in the wheel.
+     * @param event The event to remove.
+     * @return true if the event was in this wheel.
+     */
+    @Override
+    public boolean remove(Event event) {
+        if (this.ready.remove(event)) {
+            return true;
+        }
+        int slot = (int) (this.tickOf(event) & this.slotMask);
+        if (event.getPreviousInSlot() == null && this.slots[slot] != event) {
+            return false;
+        }
+        this.unlink(event, slot);
+        return true;
+    }
+
+    private long tickOf(Event event) {
+        return (long) Math.floor(event.getTime() / this.resolution);
+    }
+
+    private void unlink(Event event, int slot) {
+        Event previous = event.getPreviousInSlot();
+        Event next = event.getNextInSlot();
+
+        if (previous != null) {
+            previous.setNextInSlot(next);
+        } else {
+            this.slots[slot] = next;
+        }
+        if (next != null) {
+            next.setPreviousInSlot(previous);
+        }
+        event.setPreviousInSlot(null);
+        event.setNextInSlot(null);
+        this.wheelCount--;
+    }
+
+    /**
+     * Moves the cursor to the next tick that has an event due and releases that tick's events
+     * into the ready heap. If a whole revolution passes without one, the cursor jumps to just
+     * before the earliest tick still in the wheel.
+     */
+    private void advance() {
+        long earliest = Long.MAX_VALUE;
+
+        for (int i = 1; i <= this.slots.length; i++) {
+            long tick = this.cursorTick + i;
+            int slot = (int) (tick & this.slotMask);
+
+            for (Event event = this.slots[slot]; event != null; event = event.getNextInSlot()) {
+                earliest = Math.min(earliest, this.tickOf(event));
+            }
+            if (earliest <= tick) {
+                this.release(tick, slot);
+                return;
+            }
+        }
+        this.cursorTick = earliest - 1;
+    }
+
+    private void release(long tick, int slot) {
+        this.cursorTick = tick;
+
+        Event event = this.slots[slot];
+        while (event != null) {
+            Event next = event.getNextInSlot();
+            if (this.tickOf(event) <= tick) {
+                this.unlink(event, slot);
+                this.ready.add(event);
+            }
+            event = next;
+        }
+    }
+}
@@ -17,6 +17,11 @@ public class Tree extends PlantEntity{
         super(id, position, images, animationPeriod, actionPeriod, health);
     }
 
+    @Override
+    public EntityKind getKind() {
+        return EntityKind.TREE;
+    }
+
     /**
      * Adds an activity to the scheduler.
      * @param world      The game world.
@@ -27,8 +32,7 @@ public class Tree extends PlantEntity{
     public void executeActivity(WorldModel world, ImageStore imageStore, EventScheduler scheduler) {
 
         if (!this.transform(world, scheduler, imageStore)) {
-            ActivityAction newAction = new ActivityAction(this, world, imageStore);
-            scheduler.scheduleEvent(this, newAction, this.actionPeriod);
+            scheduler.scheduleActivity(this, world, imageStore, this.actionPeriod);
         }
     }
 
@@ -39,8 +43,8 @@ public class Tree extends PlantEntity{
      * @param scheduler  Stores all the scheduled events.
      */
     public boolean transform(WorldModel world, EventScheduler scheduler, ImageStore imageStore) {
-        if (this.health <= 0) {
-            Stump stump = new Stump(STUMP_KEY + "_" + this.id, this.position, imageStore.getImageList(STUMP_KEY));
+        if (this.getHealth() <= 0) {
+            Stump stump = new Stump(STUMP_KEY + "_" + this.id, this.getPosition(), imageStore.getImageList(STUMP_KEY));
 
             world.removeEntity(scheduler, this);
 
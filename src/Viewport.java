@@ -3,6 +3,7 @@ public final class Viewport {
     private int col;
     private final int numRows;
     private final int numCols;
+    private int zoom;
 
     public Viewport(int numRows, int numCols) {
         this.numRows = numRows;
@@ -25,8 +26,37 @@ public final class Viewport {
         return numCols;
     }
 
+    /**
+     * @return The zoom level: each tile of the viewport shows 2^zoom by 2^zoom cells.
+     */
+    public int getZoom() {
+        return zoom;
+    }
+
+    public void setZoom(int zoom) {
+        this.zoom = zoom;
+    }
+
+    /**
+     * @return The number of world columns the viewport covers at its zoom level.
+     */
+    public int getSpanCols() {
+        return numCols << zoom;
+    }
+
+    /**
+     * @return The number of world rows the viewport covers at its zoom level.
+     */
+    public int getSpanRows() {
+        return numRows << zoom;
+    }
+
     public boolean contains(Point p) {
-        return p.y >= this.row && p.y < this.row + this.numRows && p.x >= this.col && p.x < this.col + this.numCols;
+        return this.contains(p.x, p.y);
+    }
+
+    public boolean contains(int x, int y) {
+        return y >= this.row && y < this.row + this.getSpanRows() && x >= this.col && x < this.col + this.getSpanCols();
     }
 
     public void shift(int col, int row) {
@@ -41,4 +71,18 @@ public final class Viewport {
     public Point viewportToWorld(int col, int row) {
         return new Point(col + this.col, row + this.row);
     }
+
+    /**
+     * Like worldToViewport, but packed by Point.pack instead of allocating a Point.
+     */
+    public long worldToViewportPacked(int col, int row) {
+        return Point.pack(col - this.col, row - this.row);
+    }
+
+    /**
+     * Like viewportToWorld, but packed by Point.pack instead of allocating a Point.
+     */
+    public long viewportToWorldPacked(int col, int row) {
+        return Point.pack(col + this.col, row + this.row);
+    }
 }
@@ -1,6 +1,8 @@
-import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 import processing.core.*;
 
@@ -17,9 +19,23 @@ public final class VirtualWorld extends PApplet {
 
     public static final String IMAGE_LIST_FILE_NAME = "imagelist";
     public static final String DEFAULT_IMAGE_NAME = "background_default";
+    public static final String ATLAS_CACHE_DIRECTORY = "atlas_cache";
     public static final int DEFAULT_IMAGE_COLOR = 0x808080;
 
+    public static final String SEED_OPTION = "-seed";
+    public static final String RECORD_OPTION = "-record";
+    public static final String REPLAY_OPTION = "-replay";
+    public static final String THREADED_OPTION = "-threaded";
+
     private String loadFile = "world.sav";
+    private Long seed = null;
+    private String recordFile = null;
+    private String replayFile = null;
+    private EventRecorder recorder = null;
+    private boolean threaded = false;
+    private boolean headless = false;
+    private SimulationThread simulationThread = null;
+    private final Instrumentation instrumentation = new Instrumentation();
     private long startTimeMillis = 0;
 
     private ImageStore imageStore;
@@ -36,32 +52,116 @@ public final class VirtualWorld extends PApplet {
     */
     public void setup() {
         parseCommandLine(ARGS);
+        openRecorder();
         loadImages(IMAGE_LIST_FILE_NAME);
         loadWorld(loadFile, this.imageStore);
 
         this.view = new WorldView(VIEW_ROWS, VIEW_COLS, this, world, TILE_WIDTH, TILE_HEIGHT);
-        this.scheduler = new EventScheduler();
+        this.view.setAtlas(this.imageStore.getAtlas());
+        if (this.scheduler == null) {
+            this.scheduler = new EventQueueScheduler();
+        }
+        this.scheduler.setRecorder(this.recorder);
         this.startTimeMillis = System.currentTimeMillis();
-        this.scheduleActions(this.world, this.scheduler, this.imageStore);
+        scheduleActions(this.world, this.scheduler, this.imageStore);
+
+        if (this.threaded && !this.headless) {
+            this.simulationThread = new SimulationThread(this.world, this.scheduler, VIEW_ROWS, VIEW_COLS, SimulationThread.DEFAULT_PERIOD_MILLIS);
+            this.simulationThread.setInstrumentation(this.instrumentation);
+            this.simulationThread.start();
+        }
     }
 
     public void draw() {
-        double appTime = (System.currentTimeMillis() - this.startTimeMillis) * 0.001;
-        double frameTime = (appTime - this.scheduler.getCurrentTime());
-        this.update(frameTime);
-        this.view.drawViewport();
+        boolean instrumented = this.instrumentation.isEnabled();
+        long drawStart;
+        if (this.simulationThread != null) {
+            drawStart = instrumented ? System.nanoTime() : 0;
+            Viewport viewport = this.view.getViewport();
+            this.simulationThread.setView(viewport.getCol(), viewport.getRow());
+            this.view.drawSnapshot(this.simulationThread.getSnapshot());
+        } else {
+            long updateStart = instrumented ? System.nanoTime() : 0;
+            double appTime = (System.currentTimeMillis() - this.startTimeMillis) * 0.001;
+            double frameTime = (appTime - this.scheduler.getCurrentTime());
+            this.update(frameTime);
+            drawStart = instrumented ? System.nanoTime() : 0;
+            if (instrumented) {
+                this.instrumentation.recordUpdate(drawStart - updateStart, this.scheduler, this.world);
+            }
+            this.view.drawViewport();
+        }
+
+        if (instrumented) {
+            this.instrumentation.recordDraw(System.nanoTime() - drawStart, this.view.getPixelsRedrawn());
+        }
+        if (this.instrumentation.isOverlayVisible()) {
+            this.instrumentation.drawOverlay(this);
+        }
     }
 
     public void update(double frameTime){
         this.scheduler.updateOnTime(frameTime);
     }
 
+    /*
+       Processing calls this when the sketch exits.
+    */
+    public void dispose() {
+        if (this.simulationThread != null) {
+            this.simulationThread.stop();
+            this.simulationThread = null;
+        }
+        finishRecording();
+        super.dispose();
+    }
+
+    /**
+     * Sets up recording to, or replaying from, an event log if one was asked for on the
+     * command line. A replay takes its seed from the log; a recording without a seed picks one.
+     */
+    private void openRecorder() {
+        try {
+            if (this.replayFile != null) {
+                EventLogReplayer replayer = new EventLogReplayer(new FileInputStream(this.replayFile));
+                this.seed = replayer.getSeed();
+                this.recorder = replayer;
+            } else if (this.recordFile != null) {
+                if (this.seed == null) {
+                    this.seed = System.nanoTime();
+                }
+                this.recorder = new EventLogWriter(new FileOutputStream(this.recordFile), this.seed);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Closes the event log, if there is one, with the current state of the world.
+     */
+    public void finishRecording() {
+        if (this.recorder != null) {
+            this.recorder.finish(this.scheduler.getCurrentTime(), this.world.log());
+            this.recorder = null;
+            this.scheduler.setRecorder(null);
+        }
+    }
+
     // Just for debugging and for P5
     // Be sure to refactor this method as appropriate
     public void mousePressed() {
         Point pressed = mouseToPoint();
         System.out.println("CLICK! " + pressed.x + ", " + pressed.y);
 
+        if (this.simulationThread != null) {
+            this.simulationThread.execute(() -> this.describeCell(pressed));
+        } else {
+            this.describeCell(pressed);
+        }
+    }
+
+    private void describeCell(Point pressed) {
         Optional<Entity> entityOptional = world.getOccupant(pressed);
         if (entityOptional.isPresent()) {
             Entity entity = entityOptional.get();
@@ -74,8 +174,10 @@ public final class VirtualWorld extends PApplet {
 
     }
 
-    public void scheduleActions(WorldModel world, EventScheduler scheduler, ImageStore imageStore) {
-        for (Entity entity : world.getEntities()) {
+    public static void scheduleActions(WorldModel world, EventScheduler scheduler, ImageStore imageStore) {
+        EntityList entities = world.getEntities();
+        for (int i = 0; i < entities.size(); i++) {
+            Entity entity = entities.get(i);
             if (entity instanceof AnimationEntity){
                 ((AnimationEntity)entity).scheduleActions(scheduler, world, imageStore);
             }
@@ -83,7 +185,7 @@ public final class VirtualWorld extends PApplet {
     }
 
     private Point mouseToPoint() {
-        return view.getViewport().viewportToWorld(mouseX / TILE_WIDTH, mouseY / TILE_HEIGHT);
+        return view.screenToWorld(mouseX, mouseY);
     }
 
     public void keyPressed() {
@@ -98,6 +200,28 @@ public final class VirtualWorld extends PApplet {
                 case RIGHT -> dx += 1;
             }
             view.shiftView(dx, dy);
+        } else if (key == 'i') {
+            this.instrumentation.toggleOverlay();
+        } else if (key == 'p') {
+            if (this.instrumentation.toggleProfiling()) {
+                System.out.println("Profiling; press p again to print the samples");
+            } else {
+                this.instrumentation.report().forEach(System.out::println);
+                this.instrumentation.dumpSamples().forEach(System.out::println);
+            }
+        } else if (key == '+' || key == '=') {
+            zoom(-1);
+        } else if (key == '-') {
+            zoom(1);
+        }
+    }
+
+    private void zoom(int delta) {
+        if (this.simulationThread != null) {
+            // zooming out reads the world, which belongs to the simulation thread
+            System.out.println("Zoom is disabled with " + THREADED_OPTION);
+        } else {
+            view.zoom(delta);
         }
     }
 
@@ -113,18 +237,51 @@ public final class VirtualWorld extends PApplet {
         return img;
     }
 
+    /**
+     * Loads the images on the list and packs them into a TextureAtlas. The atlas is cached
+     * on disk under the list's contents and its files' sizes and times, so later runs with
+     * the same images read it back instead of loading every image again. Headless worlds
+     * never draw, so they only load the list, with no atlas and no cache.
+     * @param filename The image list file.
+     */
     public void loadImages(String filename) {
         this.imageStore = new ImageStore(createImageColored(TILE_WIDTH, TILE_HEIGHT, DEFAULT_IMAGE_COLOR));
+        String contents;
         try {
-            Scanner in = new Scanner(new File(filename));
-            WorldModel.loadImages(in, imageStore,this);
-        } catch (FileNotFoundException e) {
+            contents = new String(Files.readAllBytes(new File(filename).toPath()));
+        } catch (IOException e) {
             System.err.println(e.getMessage());
+            return;
+        }
+
+        if (this.headless) {
+            // nothing is drawn, so skip the atlas and its cache
+            ParallelImageLoader.loadImages(new Scanner(contents), this.imageStore, this, ForkJoinPool.commonPool());
+            return;
+        }
+
+        Path cache = Path.of(ATLAS_CACHE_DIRECTORY, TextureAtlas.cacheKey(contents));
+        if (Files.isDirectory(cache)) {
+            try {
+                this.imageStore.setAtlas(TextureAtlas.read(cache, this.imageStore, this));
+                return;
+            } catch (UncheckedIOException | IllegalArgumentException e) {
+                System.err.println("Ignoring the atlas cache: " + e.getMessage());
+                this.imageStore.getImages().clear();
+            }
+        }
+
+        ParallelImageLoader.loadImages(new Scanner(contents), this.imageStore, this, ForkJoinPool.commonPool());
+        this.imageStore.setAtlas(TextureAtlas.build(this.imageStore, TextureAtlas.DEFAULT_PAGE_SIZE));
+        try {
+            this.imageStore.getAtlas().write(cache, this.imageStore);
+        } catch (UncheckedIOException e) {
+            System.err.println("Could not cache the atlas: " + e.getMessage());
         }
     }
 
     public void loadWorld(String file, ImageStore imageStore) {
-        this.world = new WorldModel();
+        this.world = this.seed == null ? new WorldModel() : new WorldModel(this.seed);
         try {
             Scanner in = new Scanner(new File(file));
             world.load(in, imageStore, createDefaultBackground(imageStore));
@@ -134,23 +291,61 @@ public final class VirtualWorld extends PApplet {
         }
     }
 
+    /**
+     * Reads the command line: [world file] [-seed n] [-record file] [-replay file] [-threaded]
+     * @param args The command line arguments.
+     */
     public void parseCommandLine(String[] args) {
-        if (args.length != 0) {
-            this.loadFile = args[0]; // Instead of the default world.sav
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case SEED_OPTION -> this.seed = Long.parseLong(optionValue(args, i++));
+                case RECORD_OPTION -> this.recordFile = optionValue(args, i++);
+                case REPLAY_OPTION -> this.replayFile = optionValue(args, i++);
+                case THREADED_OPTION -> this.threaded = true;
+                default -> this.loadFile = args[i]; // Instead of the default world.sav
+            }
         }
     }
 
+    /**
+     * @return The value given after the option at optionIndex.
+     */
+    public static String optionValue(String[] args, int optionIndex) {
+        if (optionIndex + 1 >= args.length) {
+            throw new IllegalArgumentException(args[optionIndex] + " requires a value");
+        }
+        return args[optionIndex + 1];
+    }
+
     public static void main(String[] args) {
         VirtualWorld.ARGS = args;
         PApplet.main(VirtualWorld.class);
     }
 
     public static List<String> headlessMain(String[] args, double lifetime){
+        return headlessMain(args, lifetime, new EventQueueScheduler());
+    }
+
+    /**
+     * Runs the world without a window, using the given scheduler instead of the default one.
+     * @param args The command line arguments.
+     * @param lifetime The time (seconds) to run the world for. A -replay run ignores it and
+     *                 runs until the recorded run stopped.
+     * @param scheduler The scheduler to drive the world with.
+     */
+    public static List<String> headlessMain(String[] args, double lifetime, EventScheduler scheduler){
         VirtualWorld.ARGS = args;
 
         VirtualWorld virtualWorld = new VirtualWorld();
+        virtualWorld.scheduler = scheduler;
+        // headless worlds never start a SimulationThread, so lifetime is simulated time
+        virtualWorld.headless = true;
         virtualWorld.setup();
+        if (virtualWorld.recorder instanceof EventLogReplayer replayer) {
+            lifetime = replayer.getEndTime();
+        }
         virtualWorld.update(lifetime);
+        virtualWorld.finishRecording();
 
         return virtualWorld.world.log();
     }
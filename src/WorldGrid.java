@@ -0,0 +1,174 @@
+import java.util.*;
+
+/**
+ * The per-cell state of a world: each cell's background and occupant.
+ * There are two kinds of grids in this World:
+ * - FlatWorldGrid: one array per kind of state, covering the whole world.
+ * - ChunkedWorldGrid: square chunks that are only kept in memory while they are in use,
+ *      for worlds too big to hold at once.
+ *
+ * Backgrounds are stored as an index into a palette of distinct Backgrounds, since a world
+ * only uses a handful of them. Occupants are stored as int handles into a table of
+ * entities; handle 0 means the cell is empty. An entity keeps its handle while it is on the
+ * grid, and the handle is reused once the entity leaves the world.
+ */
+public abstract class WorldGrid {
+    public static final int EMPTY = 0;
+    public static final int NO_BACKGROUND = 0;
+    protected static final int MAX_PALETTE_SIZE = 1 << 16;
+
+    private final List<Background> palette;
+    private final Map<String, Integer> paletteIndex;
+
+    private Entity[] occupants;
+    private int[] freeHandles;
+    private int freeHandleCount;
+    private int handleCount;
+
+    public WorldGrid() {
+        this.palette = new ArrayList<>();
+        this.palette.add(null);
+        this.paletteIndex = new HashMap<>();
+        this.occupants = new Entity[16];
+        this.freeHandles = new int[16];
+        this.handleCount = 1;
+    }
+
+    //implemented in the FlatWorldGrid and ChunkedWorldGrid classes
+    public abstract int getRows();
+    public abstract int getCols();
+    public abstract boolean withinBounds(int x, int y);
+
+    /**
+     * @return The one shared Point for cell (x, y), which must be within bounds.
+     */
+    public abstract Point pointAt(int x, int y);
+
+    /**
+     * @return The background's index in the palette, or NO_BACKGROUND if the cell has none.
+     */
+    public abstract int getBackgroundIndex(int x, int y);
+    protected abstract void setBackgroundIndex(int x, int y, int index);
+
+    /**
+     * Sets every cell's background.
+     */
+    public abstract void fillBackground(Background background);
+
+    /**
+     * Takes every cell's background away.
+     */
+    public abstract void clearBackgrounds();
+
+    /**
+     * @return The handle of the cell's occupant, or EMPTY.
+     */
+    public abstract int getOccupantHandle(int x, int y);
+    protected abstract void setOccupantHandle(int x, int y, int handle);
+
+    /**
+     * Empties every cell and forgets every handle.
+     */
+    public void clearOccupants() {
+        Arrays.fill(this.occupants, null);
+        this.freeHandleCount = 0;
+        this.handleCount = 1;
+    }
+
+    public Background getBackground(int x, int y) {
+        return this.palette.get(this.getBackgroundIndex(x, y));
+    }
+
+    /**
+     * Sets a cell's background. Backgrounds with the same id share one palette entry.
+     */
+    public void setBackground(int x, int y, Background background) {
+        this.setBackgroundIndex(x, y, this.paletteIndexOf(background));
+    }
+
+    /**
+     * @param index An index returned by getBackgroundIndex.
+     */
+    public Background getPaletteBackground(int index) {
+        return this.palette.get(index);
+    }
+
+    public int getPaletteSize() {
+        return this.palette.size();
+    }
+
+    protected int paletteIndexOf(Background background) {
+        if (background == null) {
+            return NO_BACKGROUND;
+        }
+        Integer index = this.paletteIndex.get(background.getId());
+        if (index == null) {
+            if (this.palette.size() == MAX_PALETTE_SIZE) {
+                throw new IllegalArgumentException("WorldGrid supports at most " + (MAX_PALETTE_SIZE - 1) + " backgrounds");
+            }
+            index = this.palette.size();
+            this.palette.add(background);
+            this.paletteIndex.put(background.getId(), index);
+        }
+        return index;
+    }
+
+    public boolean isOccupied(int x, int y) {
+        return this.getOccupantHandle(x, y) != EMPTY;
+    }
+
+    /**
+     * @return The cell's occupant, or null if it is empty.
+     */
+    public Entity getOccupant(int x, int y) {
+        return this.occupants[this.getOccupantHandle(x, y)];
+    }
+
+    /**
+     * @param handle A handle returned by getOccupantHandle.
+     */
+    public Entity getEntity(int handle) {
+        return this.occupants[handle];
+    }
+
+    /**
+     * Puts an entity in a cell, giving it a handle if it does not have one yet.
+     * @param entity The new occupant, or null to empty the cell.
+     */
+    public void setOccupant(int x, int y, Entity entity) {
+        this.setOccupantHandle(x, y, entity == null ? EMPTY : this.handleOf(entity));
+    }
+
+    /**
+     * Gives back the handle of an entity that has left the world.
+     */
+    public void release(Entity entity) {
+        int handle = entity.getGridHandle();
+        if (handle != EMPTY) {
+            this.occupants[handle] = null;
+            if (this.freeHandleCount == this.freeHandles.length) {
+                this.freeHandles = Arrays.copyOf(this.freeHandles, this.freeHandles.length * 2);
+            }
+            this.freeHandles[this.freeHandleCount++] = handle;
+            entity.setGridHandle(EMPTY);
+        }
+    }
+
+    private int handleOf(Entity entity) {
+        int handle = entity.getGridHandle();
+        if (handle != EMPTY) {
+            return handle;
+        }
+        if (this.freeHandleCount > 0) {
+            handle = this.freeHandles[--this.freeHandleCount];
+        } else {
+            if (this.handleCount == this.occupants.length) {
+                this.occupants = Arrays.copyOf(this.occupants, this.occupants.length * 2);
+            }
+            handle = this.handleCount++;
+        }
+        this.occupants[handle] = entity;
+        entity.setGridHandle(handle);
+        return handle;
+    }
+}
@@ -16,17 +16,135 @@ public final class WorldModel {
     public static final int PROPERTY_ROW = 3;
     public static final int ENTITY_NUM_PROPERTIES = 4;
     public static final int COLOR_MASK = 0xffffff;
+    public static final Point OFF_GRID = new Point(-1, -1);
     public static final int KEYED_RED_IDX = 2;
     public static final int KEYED_GREEN_IDX = 3;
     public static final int KEYED_BLUE_IDX = 4;
     private int numRows;
     private int numCols;
-    private Background[][] background;
-    private Entity[][] occupancy;
-    private Set<Entity> entities;
+    private WorldGrid grid;
+    private boolean chunked;
+    private boolean hasBackgrounds;
+    private boolean hasEntities;
+    private EntityList entities;
+    private SpatialIndex index;
+    private EntityRegistry registry;
+    private EntityStore store;
+    private Pathfinder pathfinder;
+    private List<FlowField> flowFields;
+    private DirtyCells dirtyCells;
+    private LevelOfDetail levelOfDetail;
+    private long addedCount;
+    private Random random;
 
     public WorldModel() {
+        this.random = new Random();
+    }
+
+    /**
+     * Creates a WorldModel whose random choices are reproducible.
+     * @param seed The seed for the world's random number generator.
+     */
+    public WorldModel(long seed) {
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Makes this world keep its cells in chunks that are made on demand and evicted when idle,
+     * instead of in arrays covering the whole world. The world takes its size from the grid,
+     * and cells the save file does not give a background get one from the grid's Generator.
+     * Call this before load.
+     * @param grid The grid to keep the world's cells in.
+     */
+    public void useChunkedGrid(ChunkedWorldGrid grid) {
+        this.grid = grid;
+        this.chunked = true;
+        this.numRows = grid.getRows();
+        this.numCols = grid.getCols();
+    }
+
+    /**
+     * Makes this world keep its entities' changing state in an EntityStore, so passes over
+     * every entity, such as log, read parallel arrays. Call this before load.
+     * @param store The store to keep the world's entities in.
+     */
+    public void useEntityStore(EntityStore store) {
+        this.store = store;
+        store.setWorld(this);
+    }
+
+    /**
+     * @return The store the world's entities are kept in, or null if they keep their own state.
+     */
+    public EntityStore getEntityStore() {
+        return this.store;
+    }
+
+    /**
+     * Makes Dudes and Fairies follow shortest paths around obstacles, instead of stepping
+     * straight toward their target and waiting whenever both straight steps are blocked.
+     * @param pathfinder The pathfinder to plan with, or null for straight steps.
+     */
+    public void usePathfinder(Pathfinder pathfinder) {
+        this.pathfinder = pathfinder;
+    }
+
+    /**
+     * @return The pathfinder MotionEntities plan with, or null if they take straight steps.
+     */
+    public Pathfinder getPathfinder() {
+        return this.pathfinder;
+    }
+
+    /**
+     * Makes this world mark each cell whose background or occupant changes, so a view can
+     * redraw just those cells.
+     * @param dirtyCells Where to mark changed cells, or null to stop marking them.
+     */
+    public void setDirtyCells(DirtyCells dirtyCells) {
+        this.dirtyCells = dirtyCells;
+    }
+
+    /**
+     * Makes this world keep a LevelOfDetail up to date as its cells change.
+     * @param levelOfDetail The summary to keep up to date, or null for none.
+     */
+    public void setLevelOfDetail(LevelOfDetail levelOfDetail) {
+        this.levelOfDetail = levelOfDetail;
+    }
+
+    /**
+     * Makes Dudes and Fairies walk down shared FlowFields toward the nearest entity they
+     * are after, instead of each stepping toward its own target. This takes precedence
+     * over a Pathfinder. Fields cover the whole grid, so a chunked world cannot use them.
+     * @param useFlowFields true to move by FlowFields.
+     */
+    public void useFlowFields(boolean useFlowFields) {
+        if (useFlowFields && this.chunked) {
+            throw new UnsupportedOperationException("A chunked world cannot use flow fields");
+        }
+        this.flowFields = useFlowFields ? new ArrayList<>() : null;
+    }
 
+    public boolean isUsingFlowFields() {
+        return this.flowFields != null;
+    }
+
+    /**
+     * Returns the FlowField toward the given kinds, making it the first time it is asked for.
+     * From then on the world keeps it up to date.
+     * @param targetKinds The kinds of entity to head for, as an EntityKind mask.
+     * @param passableKinds The kinds of entity that can be walked over, as an EntityKind mask.
+     */
+    public FlowField getFlowField(int targetKinds, int passableKinds) {
+        for (FlowField field : this.flowFields) {
+            if (field.getTargetKinds() == targetKinds && field.getPassableKinds() == passableKinds) {
+                return field;
+            }
+        }
+        FlowField field = new FlowField(this, targetKinds, passableKinds);
+        this.flowFields.add(field);
+        return field;
     }
 
     public int getRows() {
@@ -37,10 +155,17 @@ public final class WorldModel {
         return this.numCols;
     }
 
-    public Set<Entity> getEntities() {
+    public EntityList getEntities() {
         return this.entities;
     }
 
+    /**
+     * @return The random number generator every random choice in this world must use.
+     */
+    public Random getRandom() {
+        return this.random;
+    }
+
     private static void processImageLine(Map<String, List<PImage>> images, String line, PApplet screen) {
         String[] attrs = line.split("\\s");
         if (attrs.length >= 2) {
@@ -68,15 +193,9 @@ public final class WorldModel {
         setAlpha(img, color(255, 255, 255), 0));
     */
     private static void setAlpha(PImage img, int maskColor, int alpha) {
-        int alphaValue = alpha << 24;
-        int nonAlpha = maskColor & COLOR_MASK;
         img.format = PApplet.ARGB;
         img.loadPixels();
-        for (int i = 0; i < img.pixels.length; i++) {
-            if ((img.pixels[i] & COLOR_MASK) == nonAlpha) {
-                img.pixels[i] = alphaValue | nonAlpha;
-            }
-        }
+        ParallelImageLoader.keyColor(img.pixels, maskColor, alpha);
         img.updatePixels();
     }
 
@@ -172,11 +291,49 @@ public final class WorldModel {
     }
 
     public void setBackgroundCell(Point pos, Background background) {
-        this.background[pos.y][pos.x] = background;
+        boolean summarised = this.levelOfDetail != null && this.withinBounds(pos.x, pos.y);
+        if (summarised) {
+            this.levelOfDetail.remove(pos.x, pos.y);
+        }
+        this.grid.setBackground(pos.x, pos.y, background);
+        if (summarised) {
+            this.levelOfDetail.add(pos.x, pos.y);
+        }
+        if (this.dirtyCells != null) {
+            this.dirtyCells.markBackground(pos.x, pos.y);
+        }
     }
 
     public Background getBackgroundCell(Point pos) {
-        return this.background[pos.y][pos.x];
+        return this.grid.getBackground(pos.x, pos.y);
+    }
+
+    public Background getBackgroundCell(int x, int y) {
+        return this.grid.getBackground(x, y);
+    }
+
+    /**
+     * Returns a Point for a cell without allocating one: every in-bounds cell has a single
+     * shared Point. Out-of-bounds cells get a new Point.
+     * @param x The cell's column.
+     * @param y The cell's row.
+     */
+    public Point pointAt(int x, int y) {
+        return this.withinBounds(x, y) ? this.grid.pointAt(x, y) : new Point(x, y);
+    }
+
+    /**
+     * @param packed A coordinate packed by Point.pack.
+     */
+    public Point pointAt(long packed) {
+        return this.pointAt(Point.unpackX(packed), Point.unpackY(packed));
+    }
+
+    /**
+     * @return The flat per-cell storage behind this world, for loops that walk many cells.
+     */
+    public WorldGrid getGrid() {
+        return this.grid;
     }
 
     /**
@@ -223,7 +380,7 @@ public final class WorldModel {
         if(row < this.numRows){
             int rows = Math.min(cells.length, this.numCols);
             for (int col = 0; col < rows; col++){
-                this.background[row][col] = new Background(cells[col], imageStore.getImageList(cells[col]));
+                this.grid.setBackground(col, row, new Background(cells[col], imageStore.getImageList(cells[col])));
             }
         }
     }
@@ -246,10 +403,16 @@ public final class WorldModel {
                 headerLine = lineCounter;
                 lastHeader = line;
                 switch (line){
-                    case "Backgrounds:" -> this.background = new Background[this.numRows][this.numCols];
+                    case "Backgrounds:" -> {
+                        this.gridForHeader().clearBackgrounds();
+                        this.hasBackgrounds = true;
+                    }
                     case "Entities:" -> {
-                        this.occupancy = new Entity[this.numRows][this.numCols];
-                        this.entities = new HashSet<>();
+                        this.gridForHeader().clearOccupants();
+                        this.hasEntities = true;
+                        this.entities = new EntityList();
+                        this.index = new SpatialIndex(SpatialIndex.DEFAULT_BUCKET_SIZE);
+                        this.registry = new EntityRegistry();
                     }
                 }
             }else{
@@ -263,25 +426,65 @@ public final class WorldModel {
         }
     }
 
+    /**
+     * @return The grid to fill in after a section header, replaced if the world's size has
+     * changed since it was made.
+     */
+    private WorldGrid gridForHeader() {
+        if (!this.chunked && (this.grid == null || this.grid.getRows() != this.numRows || this.grid.getCols() != this.numCols)) {
+            this.grid = new FlatWorldGrid(this.numRows, this.numCols);
+        }
+        return this.grid;
+    }
+
     public void load(Scanner saveFile, ImageStore imageStore, Background defaultBackground){
         this.parseSaveFile(saveFile, imageStore);
-        if(this.background == null){
-            this.background = new Background[this.numRows][this.numCols];
-            for (Background[] row : this.background)
-                Arrays.fill(row, defaultBackground);
+        if(this.chunked){
+            this.numRows = this.grid.getRows();
+            this.numCols = this.grid.getCols();
+            this.hasBackgrounds = true;
+        }
+        if(!this.hasBackgrounds){
+            this.gridForHeader().fillBackground(defaultBackground);
+            this.hasBackgrounds = true;
         }
-        if(this.occupancy == null){
-            this.occupancy = new Entity[this.numRows][this.numCols];
-            this.entities = new HashSet<>();
+        if(!this.hasEntities){
+            this.gridForHeader();
+            this.hasEntities = true;
+            this.entities = new EntityList();
+            this.index = new SpatialIndex(SpatialIndex.DEFAULT_BUCKET_SIZE);
+            this.registry = new EntityRegistry();
         }
     }
 
     public void setOccupancyCell(Point pos, Entity entity) {
-        this.occupancy[pos.y][pos.x] = entity;
+        boolean summarised = this.levelOfDetail != null && this.withinBounds(pos.x, pos.y);
+        if (summarised) {
+            this.levelOfDetail.remove(pos.x, pos.y);
+        }
+        this.grid.setOccupant(pos.x, pos.y, entity);
+        if (summarised) {
+            this.levelOfDetail.add(pos.x, pos.y);
+        }
+        if (this.dirtyCells != null) {
+            this.dirtyCells.mark(pos.x, pos.y);
+        }
+        if (this.flowFields != null) {
+            for (int i = 0; i < this.flowFields.size(); i++) {
+                this.flowFields.get(i).cellChanged(pos.x, pos.y);
+            }
+        }
+        if (this.pathfinder != null) {
+            this.pathfinder.cellChanged(this, pos.x, pos.y);
+        }
     }
 
     public Entity getOccupancyCell(Point pos) {
-        return this.occupancy[pos.y][pos.x];
+        return this.grid.getOccupant(pos.x, pos.y);
+    }
+
+    public Entity getOccupancyCell(int x, int y) {
+        return this.grid.getOccupant(x, y);
     }
 
     public Optional<Entity> getOccupant(Point pos) {
@@ -296,11 +499,21 @@ public final class WorldModel {
         if (withinBounds(pos) && this.getOccupancyCell(pos) != null) {
             Entity entity = this.getOccupancyCell(pos);
 
+            this.setOccupancyCell(pos, null);
+            if (this.entities.remove(entity)) {
+                this.index.remove(entity);
+                this.registry.remove(entity);
+                this.grid.release(entity);
+                if (this.store != null) {
+                    this.store.remove(entity);
+                }
+                if (this.pathfinder != null && entity instanceof MotionEntity mover) {
+                    this.pathfinder.forget(mover);
+                }
+            }
             /* This moves the entity just outside of the grid for
              * debugging purposes. */
-            entity.setPosition(new Point(-1, -1));
-            this.entities.remove(entity);
-            this.setOccupancyCell(pos, null);
+            entity.setPosition(OFF_GRID);
         }
     }
 
@@ -316,6 +529,7 @@ public final class WorldModel {
             Optional<Entity> occupant = this.getOccupant(pos);
             occupant.ifPresent(target -> this.removeEntity(scheduler, target));
             this.setOccupancyCell(pos, entity);
+            this.index.move(entity, oldPos, pos);
             entity.setPosition(pos);
         }
     }
@@ -327,36 +541,71 @@ public final class WorldModel {
     public void addEntity(Entity entity) {
         if (withinBounds(entity.getPosition())) {
             this.setOccupancyCell(entity.getPosition(), entity);
-            this.entities.add(entity);
+            if (this.entities.add(entity)) {
+                entity.setWorldOrder(this.addedCount++);
+                this.index.add(entity);
+                this.registry.add(entity);
+                if (this.store != null) {
+                    this.store.add(entity);
+                }
+            }
         }
     }
 
 
     /**
-     * Returns the closest entity
-     * @param pos      position of the entity calling findNearest
-     * @param classes  list of entities
+     * Returns the closest entity. Ties go to the kind declared first in EntityKind, then to
+     * the entity that was added to the world first.
+     * @param pos    position of the entity calling findNearest
+     * @param kinds  the kinds of entity to look for, as an EntityKind mask
      */
-    public Optional<Entity> findNearest(Point pos, List<Class<? extends Entity>> classes) {
-        List<Entity> ofType = new LinkedList<>();
+    public Optional<Entity> findNearest(Point pos, int kinds) {
+        return this.index.findNearest(pos, kinds);
+    }
 
-        for (Class<? extends Entity> clazz : classes) {
-            for (Entity entity : this.entities) {
-                if (clazz.isInstance(entity)) {  // Check if entity is an instance of the given class
-                    ofType.add(entity);
-                }
-            }
-        }
+    /**
+     * @param kinds The kinds of entity to count, as an EntityKind mask.
+     * @return The number of entities of those kinds in the world.
+     */
+    public int count(int kinds) {
+        return this.registry.count(kinds);
+    }
 
-        return Entity.nearestEntity(ofType, pos);
+    /**
+     * @return The entities of the world grouped by kind.
+     */
+    public EntityRegistry getRegistry() {
+        return this.registry;
     }
 
     public boolean isOccupied(Point pos) {
-        return withinBounds(pos) && this.getOccupancyCell(pos) != null;
+        return this.isOccupied(pos.x, pos.y);
+    }
+
+    /**
+     * @param packed A coordinate packed by Point.pack.
+     */
+    public boolean isOccupied(long packed) {
+        return this.isOccupied(Point.unpackX(packed), Point.unpackY(packed));
+    }
+
+    public boolean isOccupied(int x, int y) {
+        return this.withinBounds(x, y) && this.grid.isOccupied(x, y);
     }
 
     public boolean withinBounds(Point pos) {
-        return pos.y >= 0 && pos.y < this.numRows && pos.x >= 0 && pos.x < this.numCols;
+        return this.withinBounds(pos.x, pos.y);
+    }
+
+    /**
+     * @param packed A coordinate packed by Point.pack.
+     */
+    public boolean withinBounds(long packed) {
+        return this.withinBounds(Point.unpackX(packed), Point.unpackY(packed));
+    }
+
+    public boolean withinBounds(int x, int y) {
+        return y >= 0 && y < this.numRows && x >= 0 && x < this.numCols;
     }
 
     public void tryAddEntity(Entity entity) {
@@ -374,6 +623,10 @@ public final class WorldModel {
      */
     public List<String> log(){
         List<String> list = new ArrayList<>();
+        if (this.store != null) {
+            this.store.log(list);
+            return list;
+        }
         for (Entity entity : entities) {
             String log = entity.log();
             if(log != null) list.add(log);
@@ -0,0 +1,96 @@
+import processing.core.PImage;
+
+/**
+ * What a rectangle of the world looked like at one moment: the background and occupant
+ * image of each cell. A SimulationThread fills snapshots and a WorldView draws them, so
+ * the view never reads the world while the simulation is changing it.
+ *
+ * Once published, a snapshot is not changed again until the reader has let go of it, so
+ * to the view it is immutable.
+ */
+public final class WorldSnapshot {
+    private final int numRows;
+    private final int numCols;
+    private final PImage[] backgrounds;
+    private final PImage[] occupants;
+    private int col;
+    private int row;
+    private double time;
+
+    /**
+     * Creates a new, empty WorldSnapshot.
+     * @param numRows The number of rows it covers.
+     * @param numCols The number of columns it covers.
+     */
+    public WorldSnapshot(int numRows, int numCols) {
+        this.numRows = numRows;
+        this.numCols = numCols;
+        this.backgrounds = new PImage[numRows * numCols];
+        this.occupants = new PImage[numRows * numCols];
+    }
+
+    /**
+     * Records the cells of the world from (col, row). Only the thread that owns the world
+     * may call this, and only while no reader can see this snapshot.
+     * @param world The game world.
+     * @param col The leftmost column to record.
+     * @param row The top row to record.
+     * @param time The simulated time (seconds) of the world.
+     */
+    public void capture(WorldModel world, int col, int row, double time) {
+        this.col = col;
+        this.row = row;
+        this.time = time;
+        for (int r = 0; r < this.numRows; r++) {
+            for (int c = 0; c < this.numCols; c++) {
+                int x = col + c;
+                int y = row + r;
+                int cell = r * this.numCols + c;
+                if (world.withinBounds(x, y)) {
+                    Entity occupant = world.getOccupancyCell(x, y);
+                    this.backgrounds[cell] = world.getBackgroundCell(x, y).getCurrentImage();
+                    this.occupants[cell] = occupant == null ? null : occupant.getCurrentImage();
+                } else {
+                    this.backgrounds[cell] = null;
+                    this.occupants[cell] = null;
+                }
+            }
+        }
+    }
+
+    public int getNumRows() {
+        return this.numRows;
+    }
+
+    public int getNumCols() {
+        return this.numCols;
+    }
+
+    public int getCol() {
+        return this.col;
+    }
+
+    public int getRow() {
+        return this.row;
+    }
+
+    public double getTime() {
+        return this.time;
+    }
+
+    /**
+     * @return The background image of a cell, counted from the snapshot's top left, or null
+     *      if it is outside the world.
+     */
+    public PImage getBackground(int col, int row) {
+        return this.backgrounds[row * this.numCols + col];
+    }
+
+    /**
+     * @return The image of a cell's occupant, counted from the snapshot's top left, or null
+     *      if it is empty.
+     */
+    public PImage getOccupant(int col, int row) {
+        return this.occupants[row * this.numCols + col];
+    }
+}
@@ -1,7 +1,30 @@
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Random;
+import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
 
 import org.junit.jupiter.api.Test;
 
+import processing.awt.PGraphicsJava2D;
+import processing.core.PApplet;
+import processing.core.PImage;
+
 import static org.junit.jupiter.api.Assertions.*;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -204,4 +227,773 @@ public class WorldTests {
 
         assertTrue(entities.stream().anyMatch("mydude 4 2 0"::equals));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testUnscheduleRemovesOnlyThatEntitysEvents() {
+        Random random = new Random(5);
+        List<PImage> images = HeadlessRunner.createHeadlessImageStore().getImageList("obstacle");
+        EventHeap heap = new EventHeap();
+        EventQueueScheduler scheduler = new EventQueueScheduler(heap);
+        List<Entity> entities = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            entities.add(new Obstacle("o" + i, new Point(i, 0), 1.0, images));
+        }
+        for (int i = 0; i < 400; i++) {
+            Entity entity = entities.get(random.nextInt(entities.size()));
+            scheduler.scheduleEvent(entity, new AnimationAction(entity, 1), random.nextInt(50) * 0.1);
+        }
+
+        Set<Entity> unscheduled = new HashSet<>();
+        for (int i = 0; i < 20; i += 3) {
+            Entity entity = entities.get(i);
+            scheduler.unscheduleAllEvents(entity);
+            assertNull(entity.getPendingEvents());
+            unscheduled.add(entity);
+        }
+
+        int[] pending = new int[entities.size()];
+        for (Entity entity : entities) {
+            for (Event event = entity.getPendingEvents(); event != null; event = event.getNextPending()) {
+                pending[entities.indexOf(entity)]++;
+            }
+        }
+        assertEquals(Arrays.stream(pending).sum(), heap.size());
+
+        Event previous = null;
+        while (!heap.isEmpty()) {
+            Event event = heap.poll();
+            assertFalse(unscheduled.contains(event.getEntity()));
+            pending[entities.indexOf(event.getEntity())]--;
+            if (previous != null) {
+                assertTrue(EventScheduler.EVENT_ORDER.compare(previous, event) < 0);
+            }
+            previous = event;
+        }
+        assertArrayEquals(new int[entities.size()], pending);
+    }
+
+    @Test
+    public void testTimingWheelScheduler() {
+        String sav = makeSave(1, 1, "tree mytree 0 0 0.250 100.0 1");
+        List<String> entities = VirtualWorld.headlessMain(new String[]{sav}, 5, new EventQueueScheduler(new TimingWheel()));
+
+        assertEquals(1, entities.size());
+        assertEquals("mytree 0 0 20", entities.get(0));
+
+        sav = makeSave(3, 5, "dude mydude 1 1 0.500 100.0 1", "tree  0 1 0.250 0.001 1", "house  4 1", "tree  4 2 0.250 0.001 1");
+        entities = VirtualWorld.headlessMain(new String[]{sav}, 5, new EventQueueScheduler(new TimingWheel(0.050, 8)));
+
+        assertTrue(entities.stream().anyMatch("mydude 4 2 0"::equals));
+
+        sav = makeSave(2, 2, "fairy  1 0 100.0 0.100", "stump mystump 0 0");
+        entities = VirtualWorld.headlessMain(new String[]{sav}, 8, new EventQueueScheduler(new TimingWheel(0.001, 4)));
+
+        assertEquals(1, entities.size());
+        assertEquals("tree_sapling_mystump", entities.get(0).split(" ", 2)[0]);
+    }
+
+    @Test
+    public void testClosedFormAnimation() {
+        EventScheduler scheduler = new EventQueueScheduler();
+        scheduler.setClosedFormAnimation(true);
+        List<String> entities = VirtualWorld.headlessMain(new String[]{makeSave(1, 1, "tree mytree 0 0 0.250 100.0 1")}, 5, scheduler);
+
+        assertEquals(1, entities.size());
+        assertEquals("mytree 0 0 20", entities.get(0));
+
+        scheduler = new PrimitiveEventScheduler();
+        scheduler.setClosedFormAnimation(true);
+        entities = VirtualWorld.headlessMain(new String[]{makeSave(1, 1, "fairy myfairy 0 0 0.100 100.0")}, 1, scheduler);
+
+        assertEquals(1, entities.size());
+        assertEquals("myfairy 0 0 10", entities.get(0));
+
+        scheduler = new EventQueueScheduler();
+        scheduler.setClosedFormAnimation(true);
+        entities = VirtualWorld.headlessMain(new String[]{makeSave(1, 1, "obstacle myobstacle 0 0 0.500")}, 8, scheduler);
+
+        assertEquals(1, entities.size());
+        assertEquals("myobstacle 0 0 16", entities.get(0));
+
+        scheduler = new EventQueueScheduler();
+        scheduler.setClosedFormAnimation(true);
+        entities = VirtualWorld.headlessMain(new String[]{makeSave(1, 1, "dude mydude 0 0 1.000 0.100 1")}, 10, scheduler);
+
+        assertEquals(1, entities.size());
+        assertEquals("mydude 0 0 100", entities.get(0));
+    }
+
+    @Test
+    public void testSeededRunsAreReproducible() throws Exception {
+        String sav = makeSave(3, 4, "sapling mysapling 0 0 4", "sapling other 3 2 4", "dude mydude 0 2 0.300 0.130 2", "house  3 0");
+        List<String> first = VirtualWorld.headlessMain(new String[]{sav, "-seed", "42"}, 9);
+        List<String> second = VirtualWorld.headlessMain(new String[]{sav, "-seed", "42"}, 9, new PrimitiveEventScheduler());
+
+        assertEquals(first, second);
+
+        File recording = File.createTempFile("events", ".bin");
+        recording.deleteOnExit();
+        List<String> recorded = VirtualWorld.headlessMain(new String[]{sav, "-record", recording.getPath()}, 9);
+        // a replay runs until the recording stopped, whatever lifetime it is given
+        List<String> replayed = VirtualWorld.headlessMain(new String[]{sav, "-replay", recording.getPath()}, 4, new PrimitiveEventScheduler());
+
+        assertEquals(recorded, replayed);
+        String moved = makeSave(3, 4, "sapling mysapling 0 0 4", "sapling other 3 2 4", "dude mydude 1 2 0.300 0.130 2", "house  3 0");
+        assertThrows(IllegalStateException.class, () ->
+            VirtualWorld.headlessMain(new String[]{moved, "-replay", recording.getPath()}, 9)
+        );
+    }
+
+    @Test
+    public void testHeadlessRunner() {
+        String sav = makeSave(3, 5, "dude mydude 1 1 0.500 100.0 1", "tree  0 1 0.250 0.001 1", "house  4 1", "tree  4 2 0.250 0.001 1");
+        Simulation simulation = new Simulation(new Scanner(sav), 1, HeadlessRunner.createScheduler("primitive"), HeadlessRunner.createHeadlessImageStore());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        HeadlessRunner runner = new HeadlessRunner(simulation, new PrintStream(out));
+        runner.run(5, 0.1, 1);
+        assertThrows(IllegalArgumentException.class, () -> runner.run(10, 0, 1));
+        assertThrows(IllegalArgumentException.class, () -> runner.run(0, 0.1, 1));
+        assertThrows(IllegalArgumentException.class, () -> HeadlessRunner.main(new String[]{"world.sav", "1", "5", "0.1", "-report"}));
+
+        assertTrue(simulation.log().stream().anyMatch("mydude 4 2 0"::equals));
+        assertTrue(runner.getPeakQueueSize() >= 5);
+        assertEquals(7, out.toString().lines().count());
+        assertTrue(out.toString().contains("peak queue depth"));
+    }
+
+    @Test
+    public void testFindNearestMatchesFullScan() {
+        Random random = new Random(3);
+        List<String> lines = new ArrayList<>();
+        Set<Point> used = new HashSet<>();
+        String[] templates = {"tree t%d %d %d 0.5 1.0 2", "sapling s%d %d %d 1", "stump p%d %d %d", "house h%d %d %d"};
+        for (int i = 0; i < 300; i++) {
+            Point pt = new Point(random.nextInt(50), random.nextInt(40));
+            if (used.add(pt)) {
+                lines.add(String.format(templates[random.nextInt(templates.length)], i, pt.x, pt.y));
+            }
+        }
+        WorldModel world = new WorldModel(1);
+        ImageStore imageStore = HeadlessRunner.createHeadlessImageStore();
+        world.load(new Scanner(makeSave(40, 50, lines.toArray(new String[0]))), imageStore, VirtualWorld.createDefaultBackground(imageStore));
+        EventScheduler scheduler = new EventQueueScheduler();
+
+        List<Entity> moved = new ArrayList<>(world.getEntities());
+        for (int i = 0; i < 60; i++) {
+            world.moveEntity(scheduler, moved.get(random.nextInt(moved.size())), new Point(random.nextInt(50), random.nextInt(40)));
+        }
+
+        int[] queries = {EntityKind.PLANTS, EntityKind.STUMP.mask(), EntityKind.HOUSE.mask(), EntityKind.PLANTS | EntityKind.STUMP.mask()};
+        for (int i = 0; i < 500; i++) {
+            Point pos = new Point(random.nextInt(50), random.nextInt(40));
+            for (int kinds : queries) {
+                List<Entity> ofType = new LinkedList<>();
+                for (EntityKind kind : EntityKind.values()) {
+                    world.getEntities().stream().filter(entity -> kind.in(kinds) && entity.getKind() == kind)
+                            .sorted(Comparator.comparingLong(Entity::getWorldOrder)).forEach(ofType::add);
+                }
+                assertEquals(Entity.nearestEntity(ofType, pos), world.findNearest(pos, kinds));
+                assertEquals(ofType.size(), world.count(kinds));
+            }
+        }
+    }
+
+    @Test
+    public void testFlatGrid() {
+        WorldGrid grid = new FlatWorldGrid(3, 4);
+        grid.fillBackground(new Background("grass", List.of()));
+        grid.setBackground(3, 2, new Background("dirt", List.of()));
+        grid.setBackground(0, 1, new Background("dirt", List.of()));
+        assertEquals(3, grid.getPaletteSize());
+        assertEquals(grid.getBackgroundIndex(3, 2), grid.getBackgroundIndex(0, 1));
+        assertEquals("grass", grid.getBackground(1, 1).getId());
+
+        Stump first = new Stump("first", new Point(1, 2), List.of());
+        Stump second = new Stump("second", new Point(2, 2), List.of());
+        grid.setOccupant(1, 2, first);
+        int handle = grid.getOccupantHandle(1, 2);
+        assertSame(first, grid.getEntity(handle));
+
+        grid.setOccupant(1, 2, null);
+        grid.release(first);
+        assertFalse(grid.isOccupied(1, 2));
+        grid.setOccupant(2, 2, second);
+        assertEquals(handle, grid.getOccupantHandle(2, 2));
+        assertSame(second, grid.getOccupant(2, 2));
+    }
+
+    @Test
+    public void testChunkedGrid() throws Exception {
+        Path directory = Files.createTempDirectory("chunks");
+        List<Background> terrain = List.of(new Background("grass", List.of()), new Background("flowers", List.of()));
+        ChunkedWorldGrid grid = new ChunkedWorldGrid(1_000_000, 1_000_000, 16, 4, ChunkedWorldGrid.scatter(42, terrain), directory);
+        WorldModel world = new WorldModel(1);
+        world.useChunkedGrid(grid);
+        ImageStore imageStore = HeadlessRunner.createHeadlessImageStore();
+        world.load(new Scanner("Entities:\nhouse home 999000 999000\nstump far 5 5"), imageStore, VirtualWorld.createDefaultBackground(imageStore));
+
+        assertEquals(1_000_000, world.getRows());
+        assertEquals("home", world.findNearest(new Point(998000, 998500), EntityKind.HOUSE.mask()).orElseThrow().getId());
+        String generated = world.getBackgroundCell(500_000, 3).getId();
+        world.setBackgroundCell(new Point(700_000, 700_000), new Background("dirt", List.of()));
+        for (int i = 0; i < 20; i++) {
+            world.getBackgroundCell(i * 1000, 1000);
+        }
+
+        assertTrue(grid.getResidentCount() <= 4);
+        assertEquals(1, grid.getEvictedCount());
+        assertEquals("dirt", world.getBackgroundCell(700_000, 700_000).getId());
+        assertEquals(generated, world.getBackgroundCell(500_000, 3).getId());
+        assertTrue(world.isOccupied(999000, 999000));
+
+        WorldView view = new WorldView(5, 5, createHeadlessScreen(160, 160), world, 32, 32);
+        view.zoom(1);
+        assertEquals(0, view.getZoom());
+    }
+
+    @Test
+    public void testPackedCoordinates() {
+        long packed = Point.pack(-1, 7);
+        assertEquals(-1, Point.unpackX(packed));
+        assertEquals(7, Point.unpackY(packed));
+        assertEquals(new Point(3, -4).pack(), Point.pack(3, -4));
+
+        WorldModel world = new WorldModel(1);
+        ImageStore imageStore = HeadlessRunner.createHeadlessImageStore();
+        world.load(new Scanner(makeSave(3, 3, "house h 1 1")), imageStore, VirtualWorld.createDefaultBackground(imageStore));
+        assertSame(world.pointAt(2, 1), world.pointAt(Point.pack(2, 1)));
+        assertTrue(world.isOccupied(Point.pack(1, 1)));
+        assertFalse(world.withinBounds(Point.pack(3, 0)));
+    }
+
+    @Test
+    public void testEntityListSwapRemove() {
+        List<PImage> images = HeadlessRunner.createHeadlessImageStore().getImageList("obstacle");
+        EntityList list = new EntityList();
+        List<Entity> entities = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            Entity entity = new Obstacle("o" + i, new Point(i, 0), 1.0, images);
+            entities.add(entity);
+            assertTrue(list.add(entity));
+        }
+        assertFalse(list.add(entities.get(0)));
+
+        assertTrue(list.remove(entities.get(1)));
+        assertFalse(list.contains(entities.get(1)));
+        assertEquals(-1, entities.get(1).getListSlot());
+        assertSame(entities.get(5), list.get(1));
+        assertEquals(1, entities.get(5).getListSlot());
+        assertFalse(list.remove(entities.get(1)));
+
+        Iterator<Entity> iterator = list.iterator();
+        iterator.next();
+        list.add(entities.get(1));
+        assertThrows(ConcurrentModificationException.class, iterator::next);
+
+        assertTrue(list.removeIf(entity -> entity.getPosition().x % 2 == 0));
+        assertEquals(Set.of(entities.get(1), entities.get(3), entities.get(5)), new HashSet<>(list));
+        for (int slot = 0; slot < list.size(); slot++) {
+            assertEquals(slot, list.get(slot).getListSlot());
+        }
+    }
+
+    @Test
+    public void testPathfinderFindsShortestPaths() {
+        Random random = new Random(3);
+        ImageStore imageStore = HeadlessRunner.createHeadlessImageStore();
+        for (int trial = 0; trial < 200; trial++) {
+            List<String> lines = new ArrayList<>(List.of("fairy f 0 0 1.0 1.0"));
+            for (int y = 0; y < 12; y++) {
+                for (int x = 0; x < 12; x++) {
+                    if ((x != 0 || y != 0) && random.nextInt(100) < 30) {
+                        lines.add("obstacle  " + x + " " + y + " 1.0");
+                    }
+                }
+            }
+            WorldModel world = new WorldModel(1);
+            world.load(new Scanner(makeSave(12, 12, lines.toArray(new String[0]))), imageStore, VirtualWorld.createDefaultBackground(imageStore));
+            MotionEntity fairy = (MotionEntity) world.getOccupancyCell(0, 0);
+            int targetX = random.nextInt(12);
+            int targetY = random.nextInt(12);
+
+            // breadth-first distances from the fairy, for reference
+            int[][] distance = new int[12][12];
+            for (int[] row : distance) {
+                Arrays.fill(row, -1);
+            }
+            ArrayDeque<int[]> queue = new ArrayDeque<>(List.of(new int[]{0, 0}));
+            distance[0][0] = 0;
+            int best = -1;
+            while (!queue.isEmpty()) {
+                int[] cell = queue.poll();
+                if (Math.abs(cell[0] - targetX) + Math.abs(cell[1] - targetY) == 1 && best < 0) {
+                    best = distance[cell[1]][cell[0]];
+                }
+                for (int[] step : new int[][]{{1, 0}, {-1, 0}, {0, 1}, {0, -1}}) {
+                    int x = cell[0] + step[0];
+                    int y = cell[1] + step[1];
+                    if (fairy.canEnter(world, x, y) && distance[y][x] < 0) {
+                        distance[y][x] = distance[cell[1]][cell[0]] + 1;
+                        queue.add(new int[]{x, y});
+                    }
+                }
+            }
+
+            long[] path = new Pathfinder(12, 10_000).findPath(world, fairy, targetX, targetY);
+            if (best < 0) {
+                assertNull(path);
+                continue;
+            }
+            assertEquals(best, path.length);
+            Point previous = fairy.getPosition();
+            for (long cell : path) {
+                Point next = new Point(Point.unpackX(cell), Point.unpackY(cell));
+                assertTrue(previous.adjacent(next) && fairy.canEnter(world, next.x, next.y));
+                previous = next;
+            }
+        }
+    }
+
+    @Test
+    public void testDudePathsAroundObstacles() {
+        String sav = makeSave(3, 3, "dude d 0 0 0.300 100.0 1", "obstacle  1 0 1.0", "obstacle  1 1 1.0", "tree mytree 2 0 100.0 100.0 1");
+        WorldModel world = new WorldModel(1);
+        Simulation greedy = new Simulation(world, new Scanner(sav), new EventQueueScheduler(), HeadlessRunner.createHeadlessImageStore());
+        greedy.run(10, 0.1);
+        assertTrue(greedy.log().contains("d 0 0 0"));
+
+        world = new WorldModel(1);
+        world.usePathfinder(new Pathfinder());
+        Simulation pathing = new Simulation(world, new Scanner(sav), new EventQueueScheduler(), HeadlessRunner.createHeadlessImageStore());
+        pathing.run(10, 0.1);
+        assertTrue(pathing.log().contains("d 2 1 0"));
+    }
+
+    @Test
+    public void testFailedPathSearchWaitsForAChange() {
+        String sav = makeSave(5, 5, "dude d 0 0 0.100 100.0 1", "obstacle  1 0 1.0", "obstacle  0 1 1.0", "tree t 4 4 100.0 100.0 1");
+        WorldModel world = new WorldModel(1);
+        Pathfinder pathfinder = new Pathfinder();
+        world.usePathfinder(pathfinder);
+        Simulation simulation = new Simulation(world, new Scanner(sav), new EventQueueScheduler(), HeadlessRunner.createHeadlessImageStore());
+        simulation.run(5, 0.1);
+        assertEquals(1, pathfinder.getSearchCount());
+
+        world.removeEntityAt(new Point(1, 0));
+        simulation.run(6, 0.1);
+        assertEquals(2, pathfinder.getSearchCount());
+        assertFalse(world.isOccupied(0, 0));
+
+
+        // cells still ahead on a path are watched, so blocking one means planning again
+        sav = makeSave(1, 5, "dude d 0 0 0.100 100.0 1", "tree t 4 0 100.0 100.0 1");
+        world = new WorldModel(1);
+        pathfinder = new Pathfinder();
+        world.usePathfinder(pathfinder);
+        ImageStore imageStore = HeadlessRunner.createHeadlessImageStore();
+        simulation = new Simulation(world, new Scanner(sav), new EventQueueScheduler(), imageStore);
+        simulation.run(0.15, 0.05);
+        assertEquals(1, pathfinder.getSearchCount());
+        assertTrue(world.isOccupied(1, 0));
+
+        world.tryAddEntity(new Obstacle("o", new Point(3, 0), 1.0, imageStore.getImageList("obstacle")));
+        simulation.run(1.15, 0.05);
+        assertEquals(2, pathfinder.getSearchCount());
+        assertEquals(1, pathfinder.getWatchedCount());
+        assertTrue(world.isOccupied(1, 0));
+
+        world.removeEntityAt(new Point(3, 0));
+        simulation.run(2.15, 0.05);
+        assertEquals(3, pathfinder.getSearchCount());
+        assertTrue(world.isOccupied(3, 0));
+        // the dude became a DudeFull at the tree, and the DudeNotFull it was is forgotten
+        assertEquals(0, pathfinder.getWatchedCount());
+    }
+
+    @Test
+    public void testFlowFieldRepairsMatchRebuild() {
+        Random random = new Random(11);
+        ImageStore imageStore = HeadlessRunner.createHeadlessImageStore();
+        WorldModel world = new WorldModel(1);
+        world.load(new Scanner(makeSave(15, 15, "tree t 7 7 1.0 1.0 1", "dude d 0 0 1.0 1.0 1")), imageStore, VirtualWorld.createDefaultBackground(imageStore));
+        world.useFlowFields(true);
+        FlowField field = world.getFlowField(EntityKind.PLANTS, EntityKind.STUMP.mask());
+
+        for (int change = 0; change < 500; change++) {
+            Point pos = new Point(random.nextInt(15), random.nextInt(15));
+            if (world.isOccupied(pos)) {
+                if (world.getOccupancyCell(pos).getKind() != EntityKind.DUDE_NOT_FULL) {
+                    world.removeEntityAt(pos);
+                }
+            } else {
+                switch (random.nextInt(3)) {
+                    case 0 -> world.addEntity(new Tree("", pos, 1.0, 1.0, 1, List.of()));
+                    case 1 -> world.addEntity(new Stump("", pos, List.of()));
+                    default -> world.addEntity(new Obstacle("", pos, 1.0, List.of()));
+                }
+            }
+
+            FlowField rebuilt = new FlowField(world, EntityKind.PLANTS, EntityKind.STUMP.mask());
+            for (int y = 0; y < 15; y++) {
+                for (int x = 0; x < 15; x++) {
+                    assertEquals(rebuilt.getDistance(x, y), field.getDistance(x, y));
+                }
+            }
+        }
+    }
+
+    /**
+     * @return A sketch that draws offscreen, for testing views without a window.
+     */
+    public static PApplet createHeadlessScreen(int width, int height) {
+        PApplet screen = new PApplet();
+        screen.g = new PGraphicsJava2D();
+        screen.g.setParent(screen);
+        screen.g.setPrimary(false);
+        screen.g.setSize(width, height);
+        screen.g.beginDraw();
+        return screen;
+    }
+
+    @Test
+    public void testBackgroundChangeSurvivesShiftView() {
+        PApplet screen = createHeadlessScreen(160, 160);
+        String sav = makeSave(10, 10);
+        WorldModel world = new WorldModel(1);
+        new Simulation(world, new Scanner(sav), new EventQueueScheduler(), HeadlessRunner.createHeadlessImageStore());
+        WorldView view = new WorldView(5, 5, screen, world, 32, 32);
+        view.drawViewport();
+
+        Background red = new Background("red", List.of(VirtualWorld.createImageColored(32, 32, 0xffff0000)));
+        world.setBackgroundCell(new Point(0, 0), red);
+        view.shiftView(0, 0);
+        view.drawViewport();
+        view.shiftView(1, 0);
+        view.drawViewport();
+        view.shiftView(-1, 0);
+        view.drawViewport();
+
+        assertEquals(0xffff0000, screen.get(5, 5));
+        assertEquals(0xff000000 | VirtualWorld.DEFAULT_IMAGE_COLOR, screen.get(37, 5));
+    }
+
+    @Test
+    public void testDirtyCellsMarkBackgrounds() {
+        DirtyCells dirtyCells = new DirtyCells(8);
+        dirtyCells.mark(1, 2);
+        dirtyCells.markBackground(2, 3);
+        assertEquals(2, dirtyCells.size());
+        assertEquals(Point.pack(2, 3), dirtyCells.get(1));
+        assertEquals(1, dirtyCells.backgroundSize());
+        assertEquals(Point.pack(2, 3), dirtyCells.getBackground(0));
+
+        PApplet screen = createHeadlessScreen(160, 160);
+        WorldModel world = new WorldModel(1);
+        new Simulation(world, new Scanner(makeSave(10, 10)), new EventQueueScheduler(), HeadlessRunner.createHeadlessImageStore());
+        WorldView view = new WorldView(5, 5, screen, world, 32, 32);
+        view.drawViewport();
+        assertEquals(25 * 32 * 32, view.getPixelsRedrawn());
+
+        Background red = new Background("red", List.of(VirtualWorld.createImageColored(32, 32, 0xffff0000)));
+        world.setBackgroundCell(new Point(2, 3), red);
+        world.setBackgroundCell(new Point(8, 8), red);
+        view.drawViewport();
+        assertEquals(32 * 32, view.getPixelsRedrawn());
+        assertEquals(0xffff0000, screen.get(2 * 32 + 5, 3 * 32 + 5));
+    }
+
+    @Test
+    public void testDirtyCellsOverflowRedrawsEverything() {
+        DirtyCells dirtyCells = new DirtyCells(4);
+        for (int i = 0; i < 5; i++) {
+            dirtyCells.markBackground(i, 0);
+        }
+        assertTrue(dirtyCells.isOverflowed());
+        assertEquals(0, dirtyCells.size());
+        assertEquals(0, dirtyCells.backgroundSize());
+        dirtyCells.clear();
+        assertFalse(dirtyCells.isOverflowed());
+
+        PApplet screen = createHeadlessScreen(160, 160);
+        WorldModel world = new WorldModel(1);
+        new Simulation(world, new Scanner(makeSave(10, 10)), new EventQueueScheduler(), HeadlessRunner.createHeadlessImageStore());
+        WorldView view = new WorldView(5, 5, screen, world, 32, 32);
+        view.drawViewport();
+
+        // changes outside the viewport redraw nothing, until there are too many to list
+        Background background = world.getBackgroundCell(9, 9);
+        world.setBackgroundCell(new Point(9, 9), background);
+        view.drawViewport();
+        assertEquals(0, view.getPixelsRedrawn());
+        for (int i = 0; i <= DirtyCells.DEFAULT_CAPACITY; i++) {
+            world.setBackgroundCell(new Point(9, 9), background);
+        }
+        view.drawViewport();
+        assertEquals(25 * 32 * 32, view.getPixelsRedrawn());
+    }
+
+    @Test
+    public void testTextureAtlasPacksAndCaches() throws Exception {
+        ImageStore imageStore = HeadlessRunner.createHeadlessImageStore();
+        List<PImage> water = WorldModel.getImages(imageStore.getImages(), "obstacle");
+        List<PImage> trees = WorldModel.getImages(imageStore.getImages(), "tree");
+        for (int i = 0; i < 40; i++) {
+            trees.add(VirtualWorld.createImageColored(32, 32, 0xff000000 | i));
+        }
+        water.add(VirtualWorld.createImageColored(32, 32, 0xff0000ff));
+        water.add(VirtualWorld.createImageColored(32, 32, 0xff0000ff));
+
+        TextureAtlas atlas = TextureAtlas.build(imageStore, 128);
+        assertEquals(3, atlas.getPageCount()); // 16 frames a page
+        assertSame(atlas.getRegion(water.get(0)), atlas.getRegion(water.get(1)));
+
+        Path directory = Files.createTempDirectory("atlas");
+        atlas.write(directory, imageStore);
+        ImageStore cached = HeadlessRunner.createHeadlessImageStore();
+        TextureAtlas read = TextureAtlas.read(directory, cached, new PApplet());
+        assertEquals(3, read.getPageCount());
+        List<PImage> cachedTrees = cached.getImageList("tree");
+        assertEquals(40, cachedTrees.size());
+        for (int i = 0; i < 40; i++) {
+            cachedTrees.get(i).loadPixels();
+            assertEquals(trees.get(i).pixels[5], cachedTrees.get(i).pixels[5]);
+            assertNotNull(read.getRegion(cachedTrees.get(i)));
+        }
+
+        Path sprite = Files.createTempFile(directory, "sprite", ".png");
+        String list = "tree " + sprite;
+        String key = TextureAtlas.cacheKey(list);
+        assertEquals(key, TextureAtlas.cacheKey(list));
+        Files.write(sprite, new byte[]{1});
+        assertNotEquals(key, TextureAtlas.cacheKey(list));
+    }
+
+    @Test
+    public void testParallelImageLoadingKeepsFrameOrder() throws Exception {
+        String list = new String(Files.readAllBytes(Path.of(VirtualWorld.IMAGE_LIST_FILE_NAME)));
+        PApplet screen = new PApplet();
+        ImageStore sequential = HeadlessRunner.createHeadlessImageStore();
+        WorldModel.loadImages(new Scanner(list), sequential, screen);
+        ImageStore parallel = HeadlessRunner.createHeadlessImageStore();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            ParallelImageLoader.loadImages(new Scanner(list), parallel, screen, pool);
+        } finally {
+            pool.shutdown();
+        }
+
+        assertEquals(sequential.getImages().keySet(), parallel.getImages().keySet());
+        for (String key : sequential.getImages().keySet()) {
+            List<PImage> expected = sequential.getImageList(key);
+            List<PImage> actual = parallel.getImageList(key);
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                expected.get(i).loadPixels();
+                actual.get(i).loadPixels();
+                assertEquals(expected.get(i).format, actual.get(i).format);
+                assertArrayEquals(expected.get(i).pixels, actual.get(i).pixels);
+            }
+        }
+    }
+
+    @Test
+    public void testViewRedrawsOnlyVisibleAnimations() {
+        ImageStore imageStore = HeadlessRunner.createHeadlessImageStore();
+        List<PImage> frames = WorldModel.getImages(imageStore.getImages(), "obstacle");
+        frames.add(VirtualWorld.createImageColored(32, 32, 0xff0000ff));
+        frames.add(VirtualWorld.createImageColored(32, 32, 0xff00ff00));
+        String sav = makeSave(10, 10, "obstacle inside 2 2 0.100", "obstacle outside 8 8 0.100");
+        WorldModel world = new WorldModel(1);
+        Simulation simulation = new Simulation(world, new Scanner(sav), new EventQueueScheduler(), imageStore);
+        PApplet screen = createHeadlessScreen(160, 160);
+        WorldView view = new WorldView(5, 5, screen, world, 32, 32);
+        view.drawViewport();
+        PImage outsideImage = world.getOccupancyCell(8, 8).getCurrentImage();
+
+        view.drawViewport();
+        assertEquals(0, view.getPixelsRedrawn());
+
+        simulation.update(0.15);
+        assertNotSame(outsideImage, world.getOccupancyCell(8, 8).getCurrentImage());
+        view.drawViewport();
+        assertEquals(32 * 32, view.getPixelsRedrawn());
+        assertEquals(0xff00ff00, screen.get(2 * 32 + 5, 2 * 32 + 5));
+    }
+
+    @Test
+    public void testLevelOfDetailTracksChanges() {
+        Random random = new Random(13);
+        ImageStore imageStore = HeadlessRunner.createHeadlessImageStore();
+        WorldModel world = new WorldModel(1);
+        world.load(new Scanner(makeSave(20, 27, "house h 3 4")), imageStore, VirtualWorld.createDefaultBackground(imageStore));
+        LevelOfDetail levels = new LevelOfDetail(world);
+        world.setLevelOfDetail(levels);
+        assertEquals(6, levels.getLevelCount());
+        Background sand = new Background("sand", List.of(VirtualWorld.createImageColored(32, 32, 0xc2b280)));
+
+        for (int change = 0; change < 300; change++) {
+            Point pos = new Point(random.nextInt(27), random.nextInt(20));
+            if (random.nextBoolean()) {
+                world.setBackgroundCell(pos, sand);
+            } else if (world.isOccupied(pos)) {
+                world.removeEntityAt(pos);
+            } else {
+                world.addEntity(new Stump("", pos, List.of()));
+            }
+        }
+
+        LevelOfDetail rebuilt = new LevelOfDetail(world);
+        for (int level = 0; level < levels.getLevelCount(); level++) {
+            for (int y = 0; y < 20; y++) {
+                for (int x = 0; x < 27; x++) {
+                    assertEquals(rebuilt.getColor(level, x, y), levels.getColor(level, x, y));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSimulationThreadPublishesSnapshots() throws Exception {
+        String sav = makeSave(6, 8, "fairy f 0 0 0.050 0.050", "stump s 7 5", "dude d 7 0 0.050 0.050 1", "tree t 0 5 1.0 1.0 1");
+        WorldModel world = new WorldModel(3);
+        EventScheduler scheduler = new EventQueueScheduler();
+        Simulation simulation = new Simulation(world, new Scanner(sav), scheduler, HeadlessRunner.createHeadlessImageStore());
+        SimulationThread thread = new SimulationThread(world, scheduler, 4, 5, 1);
+        DirtyCells dirtyCells = new DirtyCells();
+        world.setDirtyCells(dirtyCells);
+        thread.setView(3, 2);
+        thread.start();
+
+        WorldSnapshot snapshot = thread.getSnapshot();
+        while (snapshot.getTime() < 0.5) {
+            Thread.sleep(5);
+            snapshot = thread.getSnapshot();
+        }
+        assertSame(snapshot, thread.getSnapshot());
+        CompletableFuture<Double> time = new CompletableFuture<>();
+        thread.execute(() -> time.complete(scheduler.getCurrentTime()));
+        assertTrue(time.get() >= 0.5);
+        thread.stop();
+        assertEquals(0, dirtyCells.size()); // the thread detached it
+
+        snapshot = thread.getSnapshot();
+        assertEquals(simulation.getCurrentTime(), snapshot.getTime());
+        assertEquals(3, snapshot.getCol());
+        for (int row = 0; row < 4; row++) {
+            for (int col = 0; col < 5; col++) {
+                assertEquals(world.isOccupied(3 + col, 2 + row), snapshot.getOccupant(col, row) != null);
+                assertEquals(world.getBackgroundCell(3 + col, 2 + row).getCurrentImage(), snapshot.getBackground(col, row));
+            }
+        }
+
+        List<String> headless = VirtualWorld.headlessMain(new String[]{sav, "-seed", "3"}, 5);
+        assertEquals(headless, VirtualWorld.headlessMain(new String[]{sav, "-seed", "3", "-threaded"}, 5));
+    }
+
+    @Test
+    public void testInstrumentation() {
+        RollingStats stats = new RollingStats(100);
+        for (int sample = 1; sample <= 250; sample++) {
+            stats.record(sample);
+        }
+        assertEquals(250, stats.getCount());
+        assertEquals(200, stats.percentile(0.5));
+        assertEquals(249, stats.percentile(0.99));
+        long[] kept = stats.getSamples();
+        assertEquals(100, kept.length);
+        assertEquals(151, kept[0]);
+        assertEquals(250, kept[99]);
+
+        String sav = makeSave(2, 2, "fairy f 0 0 0.100 0.050", "tree t 1 1 1.0 0.100 1");
+        Simulation simulation = new Simulation(new Scanner(sav), 1, new EventQueueScheduler(), HeadlessRunner.createHeadlessImageStore());
+        Instrumentation instrumentation = new Instrumentation();
+        instrumentation.setEnabled(true);
+        for (int frame = 0; frame < 20; frame++) {
+            simulation.update(1.0);
+            instrumentation.recordUpdate(1000, simulation.getScheduler(), simulation.getWorld());
+        }
+        assertEquals(simulation.getScheduler().getEventCount(), simulation.getScheduler().getEventCount(ActionKind.ACTIVITY) + simulation.getScheduler().getEventCount(ActionKind.ANIMATION));
+        List<String> report = instrumentation.report();
+        assertTrue(report.contains("events/frame: ACTIVITY p50 30 p99 31 ANIMATION p50 11 p99 12"), report.toString());
+        assertTrue(report.contains("entities: HOUSE=0 DUDE_FULL=0 DUDE_NOT_FULL=0 OBSTACLE=0 FAIRY=1 STUMP=0 TREE=1 SAPLING=0"));
+        assertEquals("update ns: " + String.join(" ", Collections.nCopies(20, "1000")), instrumentation.dumpSamples().get(0));
+
+        Instrumentation toggled = new Instrumentation();
+        toggled.toggleOverlay();
+        assertTrue(toggled.toggleProfiling());
+        toggled.toggleOverlay();
+        assertTrue(toggled.isEnabled());
+        assertFalse(toggled.toggleProfiling());
+        assertFalse(toggled.isEnabled());
+    }
+
+    @Test
+    public void testEntityStoreMatchesObjects() throws Exception {
+        String sav = String.join("\n", Files.readAllLines(Path.of("world.sav")));
+        for (boolean closedForm : new boolean[]{false, true}) {
+            Simulation objects = new Simulation(new Scanner(sav), 5, new EventQueueScheduler(), HeadlessRunner.createHeadlessImageStore());
+            WorldModel world = new WorldModel(5);
+            EntityStore store = new EntityStore();
+            world.useEntityStore(store);
+            EventScheduler scheduler = new EventQueueScheduler();
+            scheduler.setClosedFormAnimation(closedForm);
+            Simulation stored = new Simulation(world, new Scanner(sav), scheduler, HeadlessRunner.createHeadlessImageStore());
+
+            objects.run(60, 0.1);
+            stored.run(60, 0.1);
+
+            assertEquals(objects.log(), stored.log());
+            assertEquals(world.getEntities().size(), store.size());
+            for (int slot = 0; slot < store.size(); slot++) {
+                Entity entity = store.getEntity(slot);
+                assertEquals(slot, entity.getStoreSlot());
+                assertSame(world.getEntities().get(slot), entity);
+                assertEquals(entity.getPosition(), new Point(store.getX(slot), store.getY(slot)));
+            }
+        }
+    }
+
+    @Test
+    public void testSimulationFarm() throws Exception {
+        String sav = String.join("\n", Files.readAllLines(Path.of("world.sav")));
+        List<SimulationVariant> variants = SimulationFarm.seedSweep(sav, 10, 6, EventQueueScheduler::new);
+        SimulationFarm farm = SimulationFarm.onVirtualThreads(HeadlessRunner.createHeadlessImageStore());
+        List<SimulationResult> results;
+        try {
+            results = farm.run(variants, 20, 0.1);
+        } finally {
+            farm.shutdown();
+        }
+
+        assertEquals(6, results.size());
+        for (SimulationResult result : results) {
+            Simulation alone = new Simulation(new Scanner(sav), result.getVariant().getSeed(), new EventQueueScheduler(), HeadlessRunner.createHeadlessImageStore());
+            alone.run(20, 0.1);
+
+            assertEquals(alone.log(), result.getLog());
+            assertTrue(result.getEventCount() > 0 && result.getRunNanos() > 0);
+        }
+    }
+
+    @Test
+    public void testPrimitiveScheduler() {
+        String sav = makeSave(1, 1, "fairy myfairy 0 0 0.100 100.0");
+        List<String> entities = VirtualWorld.headlessMain(new String[]{sav}, 1, new PrimitiveEventScheduler());
+
+        assertEquals(1, entities.size());
+        assertEquals("myfairy 0 0 10", entities.get(0));
+
+        sav = makeSave(2, 1, "tree mytree 0 0 100.0 0.100 1", "dude  0 1 1.000 0.100 10");
+        entities = VirtualWorld.headlessMain(new String[]{sav}, 5, new PrimitiveEventScheduler());
+
+        assertEquals(1, entities.size());
+        assertEquals("stump_mytree 0 0 0", entities.get(0));
+
+        sav = makeSave(15, 20, "fairy myfairy 10 9 100.0 0.300", "obstacle  9 11 1.126", "obstacle  10 12 1.126", "obstacle  11 11 1.126", "stump  10 14", "stump  0 0", "house  10 8");
+        entities = VirtualWorld.headlessMain(new String[]{sav}, 5, new PrimitiveEventScheduler());
+
+        assertEquals(1, entities.size());
+        assertEquals("myfairy 10 11 0", entities.get(0));
+    }
+}
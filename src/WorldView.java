@@ -1,14 +1,51 @@
 import processing.core.PApplet;
+import processing.core.PGraphics;
 import processing.core.PImage;
 
-import java.util.Optional;
-
+/**
+ * Draws the part of the world inside the viewport.
+ *
+ * The view keeps the tiles it has drawn in an offscreen buffer, and each frame only redraws
+ * the cells that have changed since the last one before copying the buffer to the screen.
+ * A cell has changed if:
+ * - the world marked it in its DirtyCells, because its background or occupant was set;
+ * - the image of the entity in it is not the one last drawn there, because an animation
+ *      moved on (by nextImage, or by the clock in closed-form animation mode);
+ * - the view was shifted, which redraws every cell.
+ * So the cost of a frame follows how much changed rather than the size of the viewport.
+ * When every cell has to be redrawn, the backgrounds come from a BackgroundLayer a chunk
+ * at a time, and only occupied cells are drawn one by one.
+ *
+ * Zoomed out, the view draws from a LevelOfDetail instead: one pixel per block of cells,
+ * made by the level whose blocks are the size a pixel covers, then scaled up to the screen.
+ * Its cost depends on the size of the screen, not on how many cells are in view.
+ *
+ * When the world runs on a SimulationThread, the view draws WorldSnapshots instead of
+ * reading the world, redrawing the cells whose images differ from the ones last drawn.
+ */
 public final class WorldView {
     private final PApplet screen;
     private final WorldModel world;
     private final int tileWidth;
     private final int tileHeight;
     private final Viewport viewport;
+    private final DirtyCells dirtyCells;
+    private final BackgroundLayer backgrounds;
+
+    // per viewport cell, row by row
+    private final PImage[] drawnImages;
+    private final PImage[] drawnBackgrounds;
+    private final boolean[] dirty;
+    private final int[] dirtyList;
+    private int dirtyCount;
+    private boolean allDirty;
+    private long snapshotOrigin;
+
+    private TextureAtlas atlas;
+    private PGraphics buffer;
+    private long pixelsRedrawn;
+    private LevelOfDetail levels;
+    private PImage zoomed;
 
     public WorldView(int numRows, int numCols, PApplet screen, WorldModel world, int tileWidth, int tileHeight) {
         this.screen = screen;
@@ -16,44 +53,284 @@ public final class WorldView {
         this.tileWidth = tileWidth;
         this.tileHeight = tileHeight;
         this.viewport = new Viewport(numRows, numCols);
+        this.dirtyCells = new DirtyCells();
+        this.backgrounds = new BackgroundLayer(screen, world, tileWidth, tileHeight);
+        this.drawnImages = new PImage[numRows * numCols];
+        this.drawnBackgrounds = new PImage[numRows * numCols];
+        this.dirty = new boolean[numRows * numCols];
+        this.dirtyList = new int[numRows * numCols];
+        this.allDirty = true;
+        world.setDirtyCells(this.dirtyCells);
+    }
+
+    /**
+     * Makes the view draw frames from their pages in an atlas.
+     * @param atlas The atlas holding the frames, or null to draw each frame's own image.
+     */
+    public void setAtlas(TextureAtlas atlas) {
+        this.atlas = atlas;
+        this.backgrounds.setAtlas(atlas);
+        this.allDirty = true;
     }
 
     public Viewport getViewport() {
         return this.viewport;
     }
 
+    /**
+     * @return The number of pixels redrawn into the buffer by the last frame.
+     */
+    public long getPixelsRedrawn() {
+        return this.pixelsRedrawn;
+    }
+
+    /**
+     * Draws a snapshot of the world instead of the world itself. The snapshot must cover as
+     * many cells as the viewport.
+     * @param snapshot The snapshot to draw.
+     */
+    public void drawSnapshot(WorldSnapshot snapshot) {
+        this.createBuffer();
+        long origin = Point.pack(snapshot.getCol(), snapshot.getRow());
+        boolean everything = this.allDirty || origin != this.snapshotOrigin;
+        int redrawn = 0;
+
+        this.buffer.beginDraw();
+        if (everything) {
+            this.buffer.clear();
+        }
+        for (int row = 0; row < snapshot.getNumRows(); row++) {
+            for (int col = 0; col < snapshot.getNumCols(); col++) {
+                int cell = row * this.viewport.getNumCols() + col;
+                PImage background = snapshot.getBackground(col, row);
+                PImage occupant = snapshot.getOccupant(col, row);
+                if (everything || background != this.drawnBackgrounds[cell] || occupant != this.drawnImages[cell]) {
+                    if (background != null) {
+                        this.drawImage(background, col * this.tileWidth, row * this.tileHeight);
+                    }
+                    if (occupant != null) {
+                        this.drawImage(occupant, col * this.tileWidth, row * this.tileHeight);
+                    }
+                    this.drawnBackgrounds[cell] = background;
+                    this.drawnImages[cell] = occupant;
+                    redrawn++;
+                }
+            }
+        }
+        this.buffer.endDraw();
+        this.screen.image(this.buffer, 0, 0);
+
+        this.pixelsRedrawn = (long) redrawn * this.tileWidth * this.tileHeight;
+        this.snapshotOrigin = origin;
+        this.allDirty = false;
+    }
+
+    private void createBuffer() {
+        if (this.buffer == null) {
+            this.buffer = this.screen.createGraphics(this.viewport.getNumCols() * this.tileWidth, this.viewport.getNumRows() * this.tileHeight);
+        }
+    }
+
     public void drawViewport() {
-        drawBackground();
-        drawEntities();
+        if (this.viewport.getZoom() > 0) {
+            this.drawZoomed();
+            return;
+        }
+        this.createBuffer();
+        boolean everything = this.allDirty || this.dirtyCells.isOverflowed();
+        this.collectDirtyCells();
+
+        this.buffer.beginDraw();
+        if (everything) {
+            this.buffer.clear();
+            this.backgrounds.draw(this.buffer, this.viewport);
+        }
+        for (int i = 0; i < this.dirtyCount; i++) {
+            this.drawCell(this.dirtyList[i], !everything);
+        }
+        this.buffer.endDraw();
+        this.screen.image(this.buffer, 0, 0);
+
+        this.pixelsRedrawn = (long) this.dirtyCount * this.tileWidth * this.tileHeight;
+        this.dirtyCount = 0;
     }
 
-    public void drawEntities() {
-        for (Entity entity : this.world.getEntities()) {
-            Point pos = entity.getPosition();
+    /**
+     * Works out which viewport cells have to be redrawn this frame.
+     */
+    private void collectDirtyCells() {
+        // stale chunks would be drawn by every later full redraw, so drop them either way
+        if (this.dirtyCells.isOverflowed()) {
+            this.backgrounds.invalidateAll();
+        }
+        for (int i = 0; i < this.dirtyCells.backgroundSize(); i++) {
+            long changed = this.dirtyCells.getBackground(i);
+            this.backgrounds.invalidate(Point.unpackX(changed), Point.unpackY(changed));
+        }
 
-            if (this.viewport.contains(pos)) {
-                Point viewPoint = this.viewport.worldToViewport(pos.x, pos.y);
-                this.screen.image(entity.getCurrentImage(), viewPoint.x * this.tileWidth, viewPoint.y * this.tileHeight);
+        if (this.allDirty || this.dirtyCells.isOverflowed()) {
+            for (int cell = 0; cell < this.dirty.length; cell++) {
+                this.markDirty(cell);
+            }
+            this.allDirty = false;
+        } else {
+            for (int i = 0; i < this.dirtyCells.size(); i++) {
+                long changed = this.dirtyCells.get(i);
+                int x = Point.unpackX(changed);
+                int y = Point.unpackY(changed);
+                if (this.viewport.contains(x, y)) {
+                    this.markDirty(this.viewCell(x, y));
+                }
             }
         }
+        this.dirtyCells.clear();
+
+        this.collectAnimations();
     }
 
-    public void drawBackground() {
+    /**
+     * Marks the viewport cells whose occupant's image is not the one last drawn there.
+     * This reads the occupancy grid for just the visible cells, so it costs the same however
+     * many entities the world has.
+     */
+    private void collectAnimations() {
         for (int row = 0; row < this.viewport.getNumRows(); row++) {
+            int y = this.viewport.getRow() + row;
             for (int col = 0; col < this.viewport.getNumCols(); col++) {
-                Point worldPoint = this.viewport.viewportToWorld(col, row);
-                Optional<PImage> image = this.world.getBackgroundImage(worldPoint);
-                if (image.isPresent()) {
-                    this.screen.image(image.get(), col * this.tileWidth, row * this.tileHeight);
+                int x = this.viewport.getCol() + col;
+                int cell = row * this.viewport.getNumCols() + col;
+                if (this.world.withinBounds(x, y)) {
+                    Entity occupant = this.world.getOccupancyCell(x, y);
+                    if (occupant != null && this.drawnImages[cell] != occupant.getCurrentImage()) {
+                        this.markDirty(cell);
+                    }
                 }
             }
         }
     }
 
+    private void markDirty(int cell) {
+        if (!this.dirty[cell]) {
+            this.dirty[cell] = true;
+            this.dirtyList[this.dirtyCount++] = cell;
+        }
+    }
+
+    private int viewCell(int x, int y) {
+        return (y - this.viewport.getRow()) * this.viewport.getNumCols() + (x - this.viewport.getCol());
+    }
+
+    /**
+     * Redraws one viewport cell into the buffer: its background, then its occupant.
+     * @param withBackground false if the BackgroundLayer has already drawn the background.
+     */
+    private void drawCell(int cell, boolean withBackground) {
+        int col = cell % this.viewport.getNumCols();
+        int row = cell / this.viewport.getNumCols();
+        long worldPoint = this.viewport.viewportToWorldPacked(col, row);
+        int x = Point.unpackX(worldPoint);
+        int y = Point.unpackY(worldPoint);
+
+        this.dirty[cell] = false;
+        this.drawnImages[cell] = null;
+        if (!this.world.withinBounds(x, y)) {
+            return;
+        }
+        if (withBackground) {
+            this.drawImage(this.world.getBackgroundCell(x, y).getCurrentImage(), col * this.tileWidth, row * this.tileHeight);
+        }
+        Entity occupant = this.world.getOccupancyCell(x, y);
+        if (occupant != null) {
+            PImage image = occupant.getCurrentImage();
+            this.drawImage(image, col * this.tileWidth, row * this.tileHeight);
+            this.drawnImages[cell] = image;
+        }
+    }
+
+    private void drawImage(PImage image, int x, int y) {
+        if (this.atlas == null) {
+            this.buffer.image(image, x, y);
+        } else {
+            this.atlas.draw(this.buffer, image, x, y);
+        }
+    }
+
+    /**
+     * Draws the zoomed out view: one pixel per display cell, each showing a block of cells.
+     */
+    private void drawZoomed() {
+        int zoom = this.viewport.getZoom();
+        int pixelWidth = Math.max(1, this.tileWidth >> zoom);
+        int pixelHeight = Math.max(1, this.tileHeight >> zoom);
+        int level = this.blockLevel();
+        int width = this.viewport.getNumCols() * this.tileWidth / pixelWidth;
+        int height = this.viewport.getNumRows() * this.tileHeight / pixelHeight;
+
+        if (this.zoomed == null || this.zoomed.width != width || this.zoomed.height != height) {
+            this.zoomed = new PImage(width, height, PApplet.RGB);
+        }
+        this.levels.render(this.zoomed, level, this.viewport.getCol() >> level, this.viewport.getRow() >> level);
+        this.screen.image(this.zoomed, 0, 0, this.viewport.getNumCols() * this.tileWidth, this.viewport.getNumRows() * this.tileHeight);
+        this.pixelsRedrawn = (long) this.viewport.getNumCols() * this.tileWidth * this.viewport.getNumRows() * this.tileHeight;
+    }
+
+    // the level of detail whose blocks are as wide as one pixel of the zoomed view
+    private int blockLevel() {
+        int tileLevel = 31 - Integer.numberOfLeadingZeros(this.tileWidth);
+        return Math.max(0, this.viewport.getZoom() - tileLevel);
+    }
+
+    public int getZoom() {
+        return this.viewport.getZoom();
+    }
+
+    /**
+     * Zooms in or out, keeping the middle of the view where it is. The view zooms out no
+     * further than it takes to see the whole world. Only a world on a FlatWorldGrid has
+     * levels of detail, so any other world stays zoomed in.
+     * @param zoomDelta The number of levels to zoom out by, or in by if negative.
+     */
+    public void zoom(int zoomDelta) {
+        if (!(this.world.getGrid() instanceof FlatWorldGrid)) {
+            return;
+        }
+        int maxZoom = 0;
+        while ((this.viewport.getNumCols() << maxZoom) < this.world.getCols() || (this.viewport.getNumRows() << maxZoom) < this.world.getRows()) {
+            maxZoom++;
+        }
+        int zoom = Functions.clamp(this.viewport.getZoom() + zoomDelta, 0, maxZoom);
+        if (zoom > 0 && this.levels == null) {
+            this.levels = new LevelOfDetail(this.world);
+            this.world.setLevelOfDetail(this.levels);
+        }
+
+        int middleCol = this.viewport.getCol() + this.viewport.getSpanCols() / 2;
+        int middleRow = this.viewport.getRow() + this.viewport.getSpanRows() / 2;
+        this.viewport.setZoom(zoom);
+        this.viewport.shift(middleCol - this.viewport.getSpanCols() / 2, middleRow - this.viewport.getSpanRows() / 2);
+        this.shiftView(0, 0);
+    }
+
+    /**
+     * Moves the view by a number of tiles, which at a zoomed out level is many cells.
+     */
     public void shiftView(int colDelta, int rowDelta) {
-        int newCol = Functions.clamp(this.viewport.getCol() + colDelta, 0, this.world.getCols() - this.viewport.getNumCols());
-        int newRow = Functions.clamp(this.viewport.getRow() + rowDelta, 0, this.world.getRows() - this.viewport.getNumRows());
+        int zoom = this.viewport.getZoom();
+        int newCol = Functions.clamp(this.viewport.getCol() + (colDelta << zoom), 0, Math.max(0, this.world.getCols() - this.viewport.getSpanCols()));
+        int newRow = Functions.clamp(this.viewport.getRow() + (rowDelta << zoom), 0, Math.max(0, this.world.getRows() - this.viewport.getSpanRows()));
+
+        // zoomed out, the view starts on a block boundary so each pixel is one whole block
+        int blockMask = ~((1 << this.blockLevel()) - 1);
+        this.viewport.shift(newCol & blockMask, newRow & blockMask);
+        this.allDirty = true;
+    }
 
-        this.viewport.shift(newCol, newRow);
+    /**
+     * @return The cell under a point on the screen, at the current zoom level.
+     */
+    public Point screenToWorld(int screenX, int screenY) {
+        int zoom = this.viewport.getZoom();
+        return new Point(this.viewport.getCol() + (int) (((long) screenX << zoom) / this.tileWidth),
+                this.viewport.getRow() + (int) (((long) screenY << zoom) / this.tileHeight));
     }
 }